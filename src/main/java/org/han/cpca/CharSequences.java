@@ -0,0 +1,85 @@
+package org.han.cpca;
+
+/**
+ * 匹配时用到的 CharSequence 操作，和 String 的同名方法结果一致，不生成子串
+ *
+ */
+final class CharSequences {
+	private CharSequences() {
+	}
+
+	/**
+	 * 同 s.toString().trim().isEmpty()
+	 */
+	static boolean isBlank(CharSequence s) {
+		return isBlank(s, 0, s.length());
+	}
+
+	/**
+	 * 同 s.toString().substring(begin, end).trim().isEmpty()
+	 */
+	static boolean isBlank(CharSequence s, int begin, int end) {
+		for (int i = begin; i < end; i++) {
+			if (s.charAt(i) > ' ') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * s 从 offset 开始是否为 str
+	 */
+	static boolean startsWith(CharSequence s, int offset, String str) {
+		if (offset < 0 || offset + str.length() > s.length()) {
+			return false;
+		}
+		for (int i = 0; i < str.length(); i++) {
+			if (s.charAt(offset + i) != str.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 同 s.toString().indexOf(str, from)
+	 */
+	static int indexOf(CharSequence s, String str, int from) {
+		return indexOf(s, str, from, s.length());
+	}
+
+	/**
+	 * str 在 s 的 [from, to) 范围内第一次出现的位置，没有时返回 -1
+	 */
+	static int indexOf(CharSequence s, String str, int from, int to) {
+		if (str.isEmpty()) {
+			return Math.min(Math.max(from, 0), to);
+		}
+		char first = str.charAt(0);
+		for (int i = Math.max(from, 0), last = to - str.length(); i <= last; i++) {
+			if (s.charAt(i) == first && startsWith(s, i, str)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * a、b 的前 length 个字符是否相同
+	 */
+	static boolean regionEquals(CharSequence a, CharSequence b, int length) {
+		if (a.length() < length || b.length() < length) {
+			return false;
+		}
+		if (a instanceof String && b instanceof String) {
+			return ((String) a).regionMatches(0, (String) b, 0, length);
+		}
+		for (int i = 0; i < length; i++) {
+			if (a.charAt(i) != b.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
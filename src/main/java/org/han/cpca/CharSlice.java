@@ -0,0 +1,52 @@
+package org.han.cpca;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * char[] 中一段字符的只读视图，不复制字符；toString 时才生成 String
+ * 逐行遍历同一个 char[] 时可以用 reset 复用，复用时不能把它交给调用方保存
+ *
+ */
+final class CharSlice implements CharSequence {
+	private final char[] chars;
+	private int offset;
+	private int length;
+
+	CharSlice(char[] chars, int offset, int length) {
+		Preconditions.checkPositionIndexes(offset, offset + length, chars.length);
+		this.chars = chars;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	CharSlice reset(int offset, int length) {
+		Preconditions.checkPositionIndexes(offset, offset + length, chars.length);
+		this.offset = offset;
+		this.length = length;
+		return this;
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("index: " + index + ", length: " + length);
+		}
+		return chars[offset + index];
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		Preconditions.checkPositionIndexes(start, end, length);
+		return new CharSlice(chars, offset + start, end - start);
+	}
+
+	@Override
+	public String toString() {
+		return new String(chars, offset, length);
+	}
+}
@@ -0,0 +1,318 @@
+package org.han.cpca;
+
+import org.han.cpca.CpcaExtractorImpl.AddressInfo;
+import org.han.cpca.CpcaExtractorImpl.CpcaDictionary;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.google.common.base.Preconditions;
+
+/**
+ * 紧凑的只读结果：6 位编码、省市区名称在地址中的位置（int）和 address 所在的地址，名称、编码字符串用到时才按编码从字典中取。
+ * 每个结果 48 字节，约为 CpcaSeg 连同位置对象的一半（生成 address 字符串后 CpcaSeg 更大），适合在内存中保存大量结果（如去重）。
+ * 方法和 CpcaSeg 的同名方法含义相同，需要 CpcaSeg 时用 toCpcaSeg()
+ *
+ * 匹配到乡镇、村时（设置了 CpcaTownDictionary）另外保存一个 Town 对象，没有乡镇的结果不增加内存
+ *
+ * 结果引用生成时所用的字典和原地址，reload 之后旧字典要等这些结果都不再使用才能回收
+ *
+ */
+@JsonPropertyOrder({ "provinceName", "cityName", "areaName", "cpcaCode", "address", "provinceNameIndex",
+		"cityNameIndex", "areaNameIndex", "townName", "townCode", "villageName", "villageCode", "townNameIndex",
+		"villageNameIndex" })
+public final class CompactCpcaSeg {
+	// packed：0~20 位依次为省、市、区名称在地址中的长度（各 7 位），21~23 位为是否有省、市、区的位置，
+	// 24~26 位为是否有省、市、区名称，27~29 位为 outcome 的序号加 1（0 表示 null）
+	private static final int LENGTH_BITS = 7;
+	private static final int MAX_LENGTH = (1 << LENGTH_BITS) - 1;
+	private static final int INDEX_SHIFT = 21;
+	private static final int NAME_SHIFT = 24;
+	private static final int OUTCOME_SHIFT = 27;
+	private static final int PROVINCE = 0;
+	private static final int CITY = 1;
+	private static final int AREA = 2;
+	private static final CpcaOutcome[] OUTCOMES = CpcaOutcome.values();
+
+	private final CpcaDictionary dictionary;
+	// address 为 source 从 addressBegin 开始的部分，addressBegin 为 -1 时 address 为 null
+	private final String source;
+	private final int addressBegin;
+	// 6 位编码，没有时为 0
+	private final int code;
+	private final int provinceBegin;
+	private final int cityBegin;
+	private final int areaBegin;
+	private final int packed;
+	// 没有乡镇时为 null
+	private final Town town;
+
+	private CompactCpcaSeg(CpcaDictionary dictionary, String source, int addressBegin, int code, int provinceBegin,
+			int cityBegin, int areaBegin, int packed, Town town) {
+		this.dictionary = dictionary;
+		this.source = source;
+		this.addressBegin = addressBegin;
+		this.code = code;
+		this.provinceBegin = provinceBegin;
+		this.cityBegin = cityBegin;
+		this.areaBegin = areaBegin;
+		this.packed = packed;
+		this.town = town;
+	}
+
+	/**
+	 * 乡镇、村的名称、12 位编码和位置，不在主字典中，原样保存
+	 */
+	private static final class Town {
+		private final String townName;
+		private final String townCode;
+		private final String villageName;
+		private final String villageCode;
+		private final CpcaIndex townNameIndex;
+		private final CpcaIndex villageNameIndex;
+
+		private Town(CpcaSeg cpcaSeg) {
+			this.townName = cpcaSeg.getTownName();
+			this.townCode = cpcaSeg.getTownCode();
+			this.villageName = cpcaSeg.getVillageName();
+			this.villageCode = cpcaSeg.getVillageCode();
+			this.townNameIndex = CpcaIndex.copyOf(cpcaSeg.getTownNameIndex());
+			this.villageNameIndex = CpcaIndex.copyOf(cpcaSeg.getVillageNameIndex());
+		}
+	}
+
+	/**
+	 *
+	 * @param dict 生成 cpcaSeg 所用的字典
+	 * @param cpcaSeg transform 的结果，名称都由编码决定
+	 * @return
+	 */
+	static CompactCpcaSeg of(CpcaDictionary dict, CpcaSeg cpcaSeg) {
+		int code = cpcaSeg.getCpcaCode() == null ? 0 : Integer.parseInt(cpcaSeg.getCpcaCode());
+		int packed = 0;
+		packed |= pack(PROVINCE, cpcaSeg.getProvinceName(), name(dict, PROVINCE, code), cpcaSeg.getProvinceNameIndex());
+		packed |= pack(CITY, cpcaSeg.getCityName(), name(dict, CITY, code), cpcaSeg.getCityNameIndex());
+		packed |= pack(AREA, cpcaSeg.getAreaName(), name(dict, AREA, code), cpcaSeg.getAreaNameIndex());
+		if (cpcaSeg.getOutcome() != null) {
+			packed |= (cpcaSeg.getOutcome().ordinal() + 1) << OUTCOME_SHIFT;
+		}
+		String source = cpcaSeg.addressSource();
+		return new CompactCpcaSeg(dict, source, source == null ? -1 : cpcaSeg.addressBegin(), code,
+				begin(cpcaSeg.getProvinceNameIndex()), begin(cpcaSeg.getCityNameIndex()),
+				begin(cpcaSeg.getAreaNameIndex()), packed, cpcaSeg.getTownName() == null ? null : new Town(cpcaSeg));
+	}
+
+	private static int pack(int level, String name, String dictName, CpcaIndex index) {
+		int bits = 0;
+		if (name != null) {
+			Preconditions.checkState(name.equals(dictName), "%s和编码对应的名称%s不一致", name, dictName);
+			bits |= 1 << (NAME_SHIFT + level);
+		}
+		if (index != null) {
+			int length = index.getEndIndex() - index.getBeginIndex();
+			Preconditions.checkState(length >= 0 && length <= MAX_LENGTH, "名称长度超出范围: %s", length);
+			bits |= 1 << (INDEX_SHIFT + level);
+			bits |= length << (LENGTH_BITS * level);
+		}
+		return bits;
+	}
+
+	private static int begin(CpcaIndex index) {
+		return index == null ? 0 : index.getBeginIndex();
+	}
+
+	private static String name(CpcaDictionary dict, int level, int code) {
+		AddressInfo addressInfo;
+		switch (level) {
+		case PROVINCE:
+			addressInfo = dict.provinces[code / 10000];
+			break;
+		case CITY:
+			addressInfo = dict.cities[code / 100];
+			break;
+		default:
+			addressInfo = dict.addressInfo(code);
+		}
+		return addressInfo == null ? null : addressInfo.getName();
+	}
+
+	private boolean hasName(int level) {
+		return (packed & (1 << (NAME_SHIFT + level))) != 0;
+	}
+
+	private boolean hasIndex(int level) {
+		return (packed & (1 << (INDEX_SHIFT + level))) != 0;
+	}
+
+	private CpcaIndex index(int level, int begin) {
+		if (!hasIndex(level)) {
+			return null;
+		}
+		return new CpcaIndex(begin, begin + ((packed >>> (LENGTH_BITS * level)) & MAX_LENGTH));
+	}
+
+	/**
+	 * 6 位编码，没有时为 0
+	 * @return
+	 */
+	@JsonIgnore
+	public int getCode() {
+		return code;
+	}
+
+	public String getProvinceName() {
+		return hasName(PROVINCE) ? name(dictionary, PROVINCE, code) : null;
+	}
+
+	public String getCityName() {
+		return hasName(CITY) ? name(dictionary, CITY, code) : null;
+	}
+
+	public String getAreaName() {
+		return hasName(AREA) ? name(dictionary, AREA, code) : null;
+	}
+
+	public String getCpcaCode() {
+		if (code == 0) {
+			return null;
+		}
+		AddressInfo addressInfo = dictionary.addressInfo(code);
+		return addressInfo != null ? addressInfo.getCpcaCode() : Integer.toString(code);
+	}
+
+	/**
+	 * 每次调用都从原地址截取生成
+	 * @return
+	 */
+	public String getAddress() {
+		if (addressBegin < 0) {
+			return null;
+		}
+		return addressBegin == 0 ? source : source.substring(addressBegin);
+	}
+
+	/**
+	 * 每次调用返回新的对象
+	 * @return
+	 */
+	public CpcaIndex getProvinceNameIndex() {
+		return index(PROVINCE, provinceBegin);
+	}
+
+	public CpcaIndex getCityNameIndex() {
+		return index(CITY, cityBegin);
+	}
+
+	public CpcaIndex getAreaNameIndex() {
+		return index(AREA, areaBegin);
+	}
+
+	/**
+	 * 乡镇名称，未设置 CpcaTownDictionary 或未匹配到时为 null，JSON 中不输出 null
+	 * @return
+	 */
+	@JsonInclude(Include.NON_NULL)
+	public String getTownName() {
+		return town == null ? null : town.townName;
+	}
+
+	/**
+	 * 乡镇的 12 位编码
+	 * @return
+	 */
+	@JsonInclude(Include.NON_NULL)
+	public String getTownCode() {
+		return town == null ? null : town.townCode;
+	}
+
+	@JsonInclude(Include.NON_NULL)
+	public String getVillageName() {
+		return town == null ? null : town.villageName;
+	}
+
+	@JsonInclude(Include.NON_NULL)
+	public String getVillageCode() {
+		return town == null ? null : town.villageCode;
+	}
+
+	/**
+	 * 每次调用返回新的对象
+	 * @return
+	 */
+	@JsonInclude(Include.NON_NULL)
+	public CpcaIndex getTownNameIndex() {
+		return town == null ? null : CpcaIndex.copyOf(town.townNameIndex);
+	}
+
+	@JsonInclude(Include.NON_NULL)
+	public CpcaIndex getVillageNameIndex() {
+		return town == null ? null : CpcaIndex.copyOf(town.villageNameIndex);
+	}
+
+	@JsonIgnore
+	public int getDictVersion() {
+		return dictionary.version;
+	}
+
+	@JsonIgnore
+	public CpcaOutcome getOutcome() {
+		int ordinal = packed >>> OUTCOME_SHIFT;
+		return ordinal == 0 ? null : OUTCOMES[ordinal - 1];
+	}
+
+	public boolean hasPca() {
+		return hasName(PROVINCE) || hasName(CITY) || hasName(AREA);
+	}
+
+	public boolean noPca() {
+		return !hasPca();
+	}
+
+	public boolean fullPca() {
+		return hasName(PROVINCE) && hasName(CITY) && hasName(AREA);
+	}
+
+	public boolean hasProvince() {
+		return hasIndex(PROVINCE);
+	}
+
+	public boolean hasCity() {
+		return hasIndex(CITY);
+	}
+
+	public boolean hasArea() {
+		return hasIndex(AREA);
+	}
+
+	public boolean hasAddress() {
+		return addressBegin >= 0 && addressBegin < source.length();
+	}
+
+	/**
+	 * 转为可修改的 CpcaSeg
+	 * @return
+	 */
+	public CpcaSeg toCpcaSeg() {
+		CpcaSeg cpcaSeg = new CpcaSeg();
+		cpcaSeg.setProvinceName(getProvinceName());
+		cpcaSeg.setCityName(getCityName());
+		cpcaSeg.setAreaName(getAreaName());
+		cpcaSeg.setCpcaCode(getCpcaCode());
+		if (addressBegin >= 0) {
+			cpcaSeg.setAddress(source, addressBegin);
+		}
+		cpcaSeg.setProvinceNameIndex(getProvinceNameIndex());
+		cpcaSeg.setCityNameIndex(getCityNameIndex());
+		cpcaSeg.setAreaNameIndex(getAreaNameIndex());
+		cpcaSeg.setTownName(getTownName());
+		cpcaSeg.setTownCode(getTownCode());
+		cpcaSeg.setVillageName(getVillageName());
+		cpcaSeg.setVillageCode(getVillageCode());
+		cpcaSeg.setTownNameIndex(getTownNameIndex());
+		cpcaSeg.setVillageNameIndex(getVillageNameIndex());
+		cpcaSeg.setDictVersion(getDictVersion());
+		cpcaSeg.setOutcome(getOutcome());
+		return cpcaSeg;
+	}
+}
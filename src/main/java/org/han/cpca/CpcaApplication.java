@@ -0,0 +1,60 @@
+package org.han.cpca;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Bean;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * 地址提取 HTTP 服务，接口见 CpcaController，配置见 application.properties 中 cpca.* 部分
+ *
+ */
+@SpringBootApplication
+public class CpcaApplication {
+
+	@Bean
+	public CpcaExtractor cpcaExtractor(@Value("${cpca.cvs-file:adcodes.csv}") String cpcaCvsFile,
+			@Value("${cpca.snapshot-file:}") String snapshotFile,
+			@Value("${cpca.result-cache-size:0}") long resultCacheSize,
+			@Value("${cpca.prefix-cache-size:0}") long prefixCacheSize,
+			@Value("${cpca.execution:common}") String execution,
+			@Value("${cpca.execution-threads:0}") int executionThreads,
+			@Value("${cpca.metrics.latency-sample-rate:8}") int latencySampleRate,
+			ObjectProvider<MeterRegistry> meterRegistry) {
+		CpcaExtractors.Builder builder = CpcaExtractors.builder().withCpcaCvsFile(cpcaCvsFile);
+		if (!snapshotFile.isEmpty()) {
+			builder.withSnapshotFile(snapshotFile);
+		}
+		if (resultCacheSize > 0) {
+			builder.withResultCache(resultCacheSize);
+		}
+		if (prefixCacheSize > 0) {
+			builder.withPrefixCache(prefixCacheSize);
+		}
+		switch (execution) {
+		case "bounded":
+			builder.withExecution(CpcaExecution.boundedPool(
+					executionThreads > 0 ? executionThreads : Runtime.getRuntime().availableProcessors()));
+			break;
+		case "virtual":
+			builder.withExecution(CpcaExecution.virtualThreads());
+			break;
+		default:
+			builder.withExecution(CpcaExecution.commonPool());
+		}
+		MeterRegistry registry = meterRegistry.getIfAvailable();
+		if (registry != null) {
+			CpcaMetrics metrics = new CpcaMetrics(latencySampleRate);
+			metrics.bindTo(registry);
+			builder.withMetrics(metrics);
+		}
+		return builder.build();
+	}
+
+	public static void main(String[] args) {
+		SpringApplication.run(CpcaApplication.class, args);
+	}
+}
@@ -0,0 +1,91 @@
+package org.han.cpca;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * transformColumns 的结果，按列保存在调用方提供的数组中，第 i 行为第 i 个地址的结果：
+ * adcode 为 6 位编码，没有时为 0；provinceEnd、cityEnd、areaEnd 为省、市、区名称在地址中的结束位置（不含），没有时为 -1；
+ * outcome 为 CpcaOutcome 的序号
+ *
+ * 同一个实例可以反复用于多批地址，每批覆盖前面的行
+ *
+ */
+public final class CpcaColumns {
+	private static final CpcaOutcome[] OUTCOMES = CpcaOutcome.values();
+	private final int[] adcode;
+	private final int[] provinceEnd;
+	private final int[] cityEnd;
+	private final int[] areaEnd;
+	private final byte[] outcome;
+
+	/**
+	 * 新建 capacity 行的数组
+	 * @param capacity
+	 */
+	public CpcaColumns(int capacity) {
+		this(new int[capacity], new int[capacity], new int[capacity], new int[capacity], new byte[capacity]);
+	}
+
+	/**
+	 * 使用调用方的数组，行数为最短的数组长度
+	 * @param adcode
+	 * @param provinceEnd
+	 * @param cityEnd
+	 * @param areaEnd
+	 * @param outcome
+	 */
+	public CpcaColumns(int[] adcode, int[] provinceEnd, int[] cityEnd, int[] areaEnd, byte[] outcome) {
+		this.adcode = Preconditions.checkNotNull(adcode, "adcode不能为空");
+		this.provinceEnd = Preconditions.checkNotNull(provinceEnd, "provinceEnd不能为空");
+		this.cityEnd = Preconditions.checkNotNull(cityEnd, "cityEnd不能为空");
+		this.areaEnd = Preconditions.checkNotNull(areaEnd, "areaEnd不能为空");
+		this.outcome = Preconditions.checkNotNull(outcome, "outcome不能为空");
+	}
+
+	public int capacity() {
+		return Math.min(Math.min(Math.min(adcode.length, provinceEnd.length), Math.min(cityEnd.length, areaEnd.length)),
+				outcome.length);
+	}
+
+	public int[] getAdcode() {
+		return adcode;
+	}
+
+	public int[] getProvinceEnd() {
+		return provinceEnd;
+	}
+
+	public int[] getCityEnd() {
+		return cityEnd;
+	}
+
+	public int[] getAreaEnd() {
+		return areaEnd;
+	}
+
+	public byte[] getOutcome() {
+		return outcome;
+	}
+
+	/**
+	 * 第 row 行的结果分类
+	 * @param row
+	 * @return
+	 */
+	public CpcaOutcome outcome(int row) {
+		return OUTCOMES[outcome[row]];
+	}
+
+	void set(int row, CpcaSeg cpcaSeg) {
+		adcode[row] = cpcaSeg.getCpcaCode() == null ? 0 : Integer.parseInt(cpcaSeg.getCpcaCode());
+		provinceEnd[row] = end(cpcaSeg.getProvinceNameIndex());
+		cityEnd[row] = end(cpcaSeg.getCityNameIndex());
+		areaEnd[row] = end(cpcaSeg.getAreaNameIndex());
+		CpcaOutcome cpcaOutcome = cpcaSeg.getOutcome();
+		outcome[row] = (byte) (cpcaOutcome != null ? cpcaOutcome : CpcaOutcome.of(cpcaSeg, false, false)).ordinal();
+	}
+
+	private static int end(CpcaIndex index) {
+		return index == null ? -1 : index.getEndIndex();
+	}
+}
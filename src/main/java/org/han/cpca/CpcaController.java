@@ -0,0 +1,148 @@
+package org.han.cpca;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+
+/**
+ * 地址提取接口：
+ * GET  /cpca/transform?location=...   单个地址
+ * POST /cpca/transformAll             JSON 字符串数组，返回同顺序的结果数组，多线程并行处理
+ * POST /cpca/stream                   NDJSON，每行一个地址，逐行返回结果
+ *
+ * strict 参数同 CpcaExtractor.transform 的 strictlyMatch，默认 true
+ *
+ */
+@RestController
+@RequestMapping("/cpca")
+public class CpcaController {
+	static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+	private final CpcaExtractor cpcaExtractor;
+	// 输出 null 字段，和 Spring MVC 默认的 Jackson 输出一致
+	private final CpcaJsonEncoder jsonEncoder;
+	// 只用于解析请求
+	private final ObjectMapper objectMapper;
+	@Value("${cpca.max-batch-size:100000}")
+	private int maxBatchSize = 100000;
+	@Value("${cpca.stream-block-size:1024}")
+	private int streamBlockSize = 1024;
+
+	@Autowired
+	public CpcaController(CpcaExtractor cpcaExtractor, ObjectMapper objectMapper) {
+		this.cpcaExtractor = cpcaExtractor;
+		this.jsonEncoder = cpcaExtractor.jsonEncoder(true);
+		this.objectMapper = objectMapper;
+	}
+
+	@GetMapping(value = "/transform", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+	public void transform(@RequestParam("location") String location,
+			@RequestParam(value = "strict", defaultValue = "true") boolean strictlyMatch,
+			HttpServletResponse response) throws IOException {
+		CpcaSeg cpcaSeg = cpcaExtractor.transform(location, strictlyMatch);
+		response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+		jsonEncoder.encode(cpcaSeg, response.getOutputStream());
+	}
+
+	@PostMapping(value = "/transformAll", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+	public void transformAll(@RequestBody String[] locations,
+			@RequestParam(value = "strict", defaultValue = "true") boolean strictlyMatch,
+			HttpServletResponse response) throws IOException {
+		Preconditions.checkArgument(locations.length <= maxBatchSize, "一次最多提交%s个地址", maxBatchSize);
+		CpcaSeg[] cpcaSegs = cpcaExtractor.transformAll(locations, null, strictlyMatch);
+		response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+		jsonEncoder.encodeAll(cpcaSegs, response.getOutputStream());
+	}
+
+	/**
+	 * 请求体每行一个地址，可以是 JSON 字符串或不带引号的原文，空行跳过；
+	 * 每读满 streamBlockSize 行并行提取一次，按行顺序写出结果（每行一个 JSON 对象）并 flush，不缓存整个请求或响应
+	 * @param in
+	 * @param strictlyMatch
+	 * @param response
+	 * @throws IOException
+	 */
+	@PostMapping(value = "/stream", produces = APPLICATION_NDJSON_VALUE)
+	public void stream(InputStream in,
+			@RequestParam(value = "strict", defaultValue = "true") boolean strictlyMatch,
+			HttpServletResponse response) throws IOException {
+		response.setContentType(APPLICATION_NDJSON_VALUE + ";charset=UTF-8");
+		OutputStream out = response.getOutputStream();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		List<String> block = new ArrayList<>(streamBlockSize);
+		String line;
+		while ((line = reader.readLine()) != null) {
+			String location = parseLine(line);
+			if (location == null) {
+				continue;
+			}
+			block.add(location);
+			if (block.size() >= streamBlockSize) {
+				writeBlock(block, strictlyMatch, out);
+			}
+		}
+		writeBlock(block, strictlyMatch, out);
+	}
+
+	private void writeBlock(List<String> block, boolean strictlyMatch, OutputStream out) throws IOException {
+		if (block.isEmpty()) {
+			return;
+		}
+		CpcaSeg[] cpcaSegs = cpcaExtractor.transformAll(block.toArray(new String[block.size()]), null, strictlyMatch);
+		jsonEncoder.encodeLines(cpcaSegs, out);
+		out.flush();
+		block.clear();
+	}
+
+	private String parseLine(String line) throws IOException {
+		String trimmed = line.trim();
+		if (trimmed.isEmpty()) {
+			return null;
+		}
+		if (trimmed.charAt(0) == '"') {
+			try {
+				return objectMapper.readValue(trimmed, String.class);
+			} catch (JsonProcessingException e) {
+				throw new IllegalArgumentException("不是合法的 JSON 字符串: " + line, e);
+			}
+		}
+		return trimmed;
+	}
+
+	void setMaxBatchSize(int maxBatchSize) {
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	void setStreamBlockSize(int streamBlockSize) {
+		this.streamBlockSize = streamBlockSize;
+	}
+
+	@ExceptionHandler(IllegalArgumentException.class)
+	public void handleIllegalArgument(IllegalArgumentException e, HttpServletResponse response) throws IOException {
+		if (!response.isCommitted()) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,169 @@
+package org.han.cpca;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * transformAll、transformAsync 的执行方式：ForkJoinPool（默认 commonPool）、固定线程数的线程池、每个任务一个虚拟线程
+ *
+ */
+public final class CpcaExecution {
+	private final static Logger logger = LoggerFactory.getLogger(CpcaExecution.class);
+	private static final Method NEW_VIRTUAL_EXECUTOR = findVirtualExecutorFactory();
+
+	private final String name;
+	private final Executor executor;
+	// 不为 null 时 transformAll 用 ForkJoin 二分切分任务
+	private final ForkJoinPool forkJoinPool;
+	private final int parallelism;
+
+	private CpcaExecution(String name, Executor executor, ForkJoinPool forkJoinPool, int parallelism) {
+		this.name = name;
+		this.executor = executor;
+		this.forkJoinPool = forkJoinPool;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * ForkJoinPool.commonPool()，默认的执行方式
+	 * @return
+	 */
+	public static CpcaExecution commonPool() {
+		return forkJoinPool(ForkJoinPool.commonPool());
+	}
+
+	public static CpcaExecution forkJoinPool(ForkJoinPool forkJoinPool) {
+		Preconditions.checkNotNull(forkJoinPool, "forkJoinPool不能为空");
+		return new CpcaExecution("forkJoinPool", forkJoinPool, forkJoinPool, forkJoinPool.getParallelism());
+	}
+
+	/**
+	 * 固定 threads 个守护线程的线程池，排队任务超过 threads * 1024 个时由提交任务的线程自己执行
+	 * @param threads
+	 * @return
+	 */
+	public static CpcaExecution boundedPool(int threads) {
+		Preconditions.checkArgument(threads > 0, "threads必须大于0");
+		AtomicInteger counter = new AtomicInteger();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<>(threads * 1024), r -> {
+					Thread thread = new Thread(r, "cpca-worker-" + counter.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+		return new CpcaExecution("boundedPool(" + threads + ")", executor, null, threads);
+	}
+
+	/**
+	 * 每个任务一个虚拟线程（JDK 21 及以上），适合和 I/O 调用一起大量并发的 transformAsync；
+	 * 当前 JDK 不支持虚拟线程时改用 commonPool
+	 * @return
+	 */
+	public static CpcaExecution virtualThreads() {
+		if (NEW_VIRTUAL_EXECUTOR == null) {
+			logger.warn("当前 JDK {} 不支持虚拟线程，改用 ForkJoinPool.commonPool()", System.getProperty("java.version"));
+			return commonPool();
+		}
+		Executor executor;
+		try {
+			executor = (Executor) NEW_VIRTUAL_EXECUTOR.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("创建虚拟线程执行器失败", e);
+		}
+		return new CpcaExecution("virtualThreads", executor, null, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * 当前 JDK 是否支持虚拟线程
+	 * @return
+	 */
+	public static boolean virtualThreadsSupported() {
+		return NEW_VIRTUAL_EXECUTOR != null;
+	}
+
+	private static Method findVirtualExecutorFactory() {
+		try {
+			return java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	Executor executor() {
+		return executor;
+	}
+
+	ForkJoinPool forkJoinPool() {
+		return forkJoinPool;
+	}
+
+	int parallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * 执行 task(0) ~ task(tasks - 1)，返回时全部执行完。
+	 * 调用线程和提交到 executor 的任务一起按顺序领取、执行，调用线程只等待已被领取的任务，
+	 * 在同一个线程池的线程里调用也不会因为线程都在等待而死锁
+	 * @param tasks
+	 * @param task
+	 */
+	void invokeAll(int tasks, IntConsumer task) {
+		AtomicInteger next = new AtomicInteger();
+		CountDownLatch done = new CountDownLatch(tasks);
+		AtomicReference<Throwable> error = new AtomicReference<>();
+		Runnable worker = () -> {
+			int i;
+			while ((i = next.getAndIncrement()) < tasks) {
+				try {
+					task.accept(i);
+				} catch (Throwable e) {
+					error.compareAndSet(null, e);
+				} finally {
+					done.countDown();
+				}
+			}
+		};
+		for (int i = 1, helpers = Math.min(tasks, parallelism); i < helpers; i++) {
+			executor.execute(worker);
+		}
+		worker.run();
+		boolean interrupted = false;
+		while (true) {
+			try {
+				done.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		Throwable e = error.get();
+		if (e instanceof RuntimeException) {
+			throw (RuntimeException) e;
+		}
+		if (e instanceof Error) {
+			throw (Error) e;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
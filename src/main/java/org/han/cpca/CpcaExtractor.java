@@ -1,6 +1,19 @@
 package org.han.cpca;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.google.common.base.Preconditions;
 
 /**
  * 中国省、市、区提取器
@@ -28,4 +41,267 @@ public interface CpcaExtractor {
 	 * @return
 	 */
 	public CpcaSeg transform(String location, Map<String, String> umap, boolean strictlyMatch);
+
+	default CpcaSeg transform(CharSequence location) {
+		return transform(location, null, true);
+	}
+
+	/**
+	 * 直接从 StringBuilder、CharBuffer 等读取，不先复制成 String。
+	 * 结果的 address 在第一次调用 getAddress() 时才生成，在此之前不能修改 location 的内容
+	 * @param location
+	 * @param umap 同 transform
+	 * @param strictlyMatch 同 transform
+	 * @return
+	 */
+	default CpcaSeg transform(CharSequence location, Map<String, String> umap, boolean strictlyMatch) {
+		return transform(location == null ? null : location.toString(), umap, strictlyMatch);
+	}
+
+	default CpcaSeg transform(char[] chars, int offset, int length) {
+		return transform(chars, offset, length, null, true);
+	}
+
+	/**
+	 * 提取 chars[offset, offset + length) 中的地址，索引相对于 offset。
+	 * 结果的 address 在第一次调用 getAddress() 时才生成，在此之前不能修改 chars 的内容
+	 * @param chars
+	 * @param offset
+	 * @param length
+	 * @param umap 同 transform
+	 * @param strictlyMatch 同 transform
+	 * @return
+	 */
+	default CpcaSeg transform(char[] chars, int offset, int length, Map<String, String> umap, boolean strictlyMatch) {
+		return transform(new CharSlice(chars, offset, length), umap, strictlyMatch);
+	}
+
+	default List<CpcaSeg> transformAll(List<String> locations) {
+		return transformAll(locations, null, true);
+	}
+	
+	default List<CpcaSeg> transformAll(List<String> locations, Map<String, String> umap, boolean strictlyMatch) {
+		return Arrays.asList(transformAll(locations.toArray(new String[locations.size()]), umap, strictlyMatch));
+	}
+	
+	default CpcaSeg[] transformAll(String[] locations) {
+		return transformAll(locations, null, true);
+	}
+	
+	/**
+	 * 批量提取，多线程并行处理，结果顺序和 locations 一致
+	 * @param locations
+	 * @param umap 同 transform
+	 * @param strictlyMatch 同 transform
+	 * @return
+	 */
+	public CpcaSeg[] transformAll(String[] locations, Map<String, String> umap, boolean strictlyMatch);
+	
+	default CompactCpcaSeg transformCompact(String location) {
+		return transformCompact(location, null, true);
+	}
+
+	/**
+	 * 同 transform，返回紧凑的只读结果，见 CompactCpcaSeg
+	 * @param location
+	 * @param umap 同 transform
+	 * @param strictlyMatch 同 transform
+	 * @return
+	 */
+	public CompactCpcaSeg transformCompact(String location, Map<String, String> umap, boolean strictlyMatch);
+
+	/**
+	 * 同 transformAll，返回紧凑的只读结果，见 CompactCpcaSeg
+	 * @param locations
+	 * @param umap 同 transform
+	 * @param strictlyMatch 同 transform
+	 * @return
+	 */
+	public CompactCpcaSeg[] transformAllCompact(String[] locations, Map<String, String> umap, boolean strictlyMatch);
+
+	/**
+	 * 按列输出 locations 的结果，第 i 个地址写入 columns 的第 i 行，见 CpcaColumns；在调用线程中执行
+	 * @param locations
+	 * @param columns 行数不少于 locations.length
+	 * @param umap 同 transform
+	 * @param strictlyMatch 同 transform
+	 */
+	default void transformColumns(String[] locations, CpcaColumns columns, Map<String, String> umap,
+			boolean strictlyMatch) {
+		Preconditions.checkArgument(columns.capacity() >= locations.length, "columns的行数小于%s", locations.length);
+		for (int i = 0; i < locations.length; i++) {
+			columns.set(i, transform(locations[i], umap, strictlyMatch));
+		}
+	}
+
+	/**
+	 * 同上，第 i 个地址为 chars[offsets[i], offsets[i + 1])，索引相对于 offsets[i]
+	 * @param chars
+	 * @param offsets 长度不少于 rows + 1
+	 * @param rows
+	 * @param columns 行数不少于 rows
+	 * @param umap 同 transform
+	 * @param strictlyMatch 同 transform
+	 */
+	default void transformColumns(char[] chars, int[] offsets, int rows, CpcaColumns columns,
+			Map<String, String> umap, boolean strictlyMatch) {
+		Preconditions.checkArgument(offsets.length > rows, "offsets的长度必须大于%s", rows);
+		Preconditions.checkArgument(columns.capacity() >= rows, "columns的行数小于%s", rows);
+		for (int i = 0; i < rows; i++) {
+			columns.set(i, transform(chars, offsets[i], offsets[i + 1] - offsets[i], umap, strictlyMatch));
+		}
+	}
+
+	/**
+	 * 按经纬度查找最近的区县（按字典中区县中心点的距离），结果只有省、市、区名称和编码，没有 address 和位置
+	 * @param longitude 经度，-180 ~ 180
+	 * @param latitude 纬度，-90 ~ 90
+	 * @return
+	 */
+	public CpcaSeg locate(double longitude, double latitude);
+
+	/**
+	 * 批量 locate，在调用线程中执行
+	 * @param longitudes
+	 * @param latitudes 和 longitudes 长度相同
+	 * @return
+	 */
+	default CpcaSeg[] locateAll(double[] longitudes, double[] latitudes) {
+		Preconditions.checkArgument(longitudes.length == latitudes.length, "longitudes和latitudes的长度不一致");
+		CpcaSeg[] results = new CpcaSeg[longitudes.length];
+		for (int i = 0; i < results.length; i++) {
+			results[i] = locate(longitudes[i], latitudes[i]);
+		}
+		return results;
+	}
+
+	/**
+	 * 批量 locate，只输出 6 位编码，第 i 个坐标的编码写入 adcodes[i]，没有时为 0
+	 * @param longitudes
+	 * @param latitudes 和 longitudes 长度相同
+	 * @param adcodes 长度不少于 longitudes.length
+	 */
+	default void locateCodes(double[] longitudes, double[] latitudes, int[] adcodes) {
+		Preconditions.checkArgument(longitudes.length == latitudes.length, "longitudes和latitudes的长度不一致");
+		Preconditions.checkArgument(adcodes.length >= longitudes.length, "adcodes的长度小于%s", longitudes.length);
+		for (int i = 0; i < longitudes.length; i++) {
+			String cpcaCode = locate(longitudes[i], latitudes[i]).getCpcaCode();
+			adcodes[i] = cpcaCode == null ? 0 : Integer.parseInt(cpcaCode);
+		}
+	}
+
+	/**
+	 * 在长文本中查找所有的省、市、区，按在文本中的顺序逐个交给 consumer。
+	 * 分块读取 reader，内存占用和文本长度无关；每处地址的结果和单独对这一段做 transform 相同，
+	 * 只有空白分隔的上下级名称（如 浙江省 杭州市 西湖区）合为一处，并列的名称（如 北京 上海）分为多处
+	 * @param reader 不会关闭
+	 * @param umap 同 transform
+	 * @param strictlyMatch 同 transform
+	 * @param consumer
+	 * @throws IOException
+	 */
+	public void scan(Reader reader, Map<String, String> umap, boolean strictlyMatch, Consumer<CpcaSpan> consumer)
+			throws IOException;
+
+	default List<CpcaSpan> scan(CharSequence text) {
+		List<CpcaSpan> spans = new ArrayList<>();
+		try {
+			scan(new StringReader(text.toString()), null, true, spans::add);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return spans;
+	}
+
+	default CompletableFuture<CpcaSeg> transformAsync(String location) {
+		return transformAsync(location, null, true);
+	}
+	
+	/**
+	 * 异步提取，在 CpcaExtractors.Builder.withExecution 指定的执行方式中执行，默认 ForkJoinPool.commonPool()
+	 * @param location
+	 * @param umap 同 transform
+	 * @param strictlyMatch 同 transform
+	 * @return
+	 */
+	default CompletableFuture<CpcaSeg> transformAsync(String location, Map<String, String> umap, boolean strictlyMatch) {
+		return CompletableFuture.supplyAsync(() -> transform(location, umap, strictlyMatch));
+	}
+	
+	/**
+	 * 把结果直接编码为 UTF-8 JSON 的编码器，见 CpcaJsonEncoder
+	 * @param includeNulls null 字段是否输出
+	 * @return
+	 */
+	default CpcaJsonEncoder jsonEncoder(boolean includeNulls) {
+		return new CpcaJsonEncoder(includeNulls);
+	}
+	
+	/**
+	 * 结果缓存的命中、未命中、淘汰次数，未开启缓存时全部为 0
+	 * @return
+	 */
+	default CacheStats cacheStats() {
+		return CacheStats.empty();
+	}
+	
+	/**
+	 * 前缀缓存的命中、未命中、淘汰次数，未开启前缀缓存时全部为 0
+	 * @return
+	 */
+	default CacheStats prefixCacheStats() {
+		return CacheStats.empty();
+	}
+	
+	/**
+	 * 重新加载字典，加载完成后替换当前字典，替换前已开始的 transform 继续使用旧字典
+	 * @param cpcaCvsFile
+	 * @param snapshotFile 快照文件，可为 null
+	 * @return 新字典的版本
+	 */
+	public CompletableFuture<Integer> reload(String cpcaCvsFile, String snapshotFile);
+	
+	default CompletableFuture<Integer> reload(String cpcaCvsFile) {
+		return reload(cpcaCvsFile, null);
+	}
+	
+	/**
+	 * 当前字典的版本，从 1 开始，每次 reload 加 1
+	 * @return
+	 */
+	default int dictionaryVersion() {
+		return 0;
+	}
+	
+	default CpcaSeg transformAsOf(String location, LocalDate asOf) {
+		return transformAsOf(location, asOf, null, true);
+	}
+	
+	/**
+	 * 按 asOf 当天生效的历史字典匹配，见 CpcaExtractors.Builder.withHistory；没有历史字典时同 transform(location, umap, strictlyMatch)
+	 * @param location
+	 * @param asOf 早于所有历史字典时使用最早的
+	 * @param umap 同 transform
+	 * @param strictlyMatch 同 transform
+	 * @return
+	 */
+	default CpcaSeg transformAsOf(String location, LocalDate asOf, Map<String, String> umap, boolean strictlyMatch) {
+		return transform(location, umap, strictlyMatch);
+	}
+	
+	/**
+	 * asOf 当天生效的 6 位编码转换为当前字典中的编码，如 富阳市 330183 转换为 富阳区 330111；
+	 * 撤销后并入其他区县的转换为上级的编码
+	 * @param cpcaCode
+	 * @param asOf 同 transformAsOf(location, asOf)
+	 * @return 当天生效的字典中没有该编码时返回 null
+	 */
+	public String currentCode(String cpcaCode, LocalDate asOf);
+	
+	/**
+	 * asOf 当天生效的字典中所有编码到当前字典中编码的对应关系，同 currentCode；批量转换历史数据时取一次后重复使用
+	 * @param asOf
+	 * @return 
+	 */
+	public Map<String, String> currentCodes(LocalDate asOf);
 }
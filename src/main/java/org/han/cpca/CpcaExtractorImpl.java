@@ -8,16 +8,30 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.URL;
 import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
+import org.han.cpca.MatchContext.AddressRule;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -27,15 +41,21 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
-import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie;
-import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie.Hit;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.google.common.base.Preconditions;
 
 public class CpcaExtractorImpl implements CpcaExtractor {
 	private final static Logger logger = LoggerFactory.getLogger(CpcaExtractorImpl.class);
-	private final static int CPCA_CODE_SIZE = 12;
 	private final static int CPCA_CODE_PROV_SIZE = 2;
 	private final static int CPCA_CODE_CITY_SIZE = 4;
 	private final static int CPCA_CODE_COUNTY_SIZE = 6;
+	private final static int MIN_BATCH_CHUNK = 256;
+	// scan 每次读入的字数
+	final static int SCAN_CHUNK = 8192;
+	// scan 中一处地址（省、市、区名称及其间的空白）的最大长度
+	final static int SCAN_MAX_SPAN = 64;
 	private static ObjectMapper mapper = new ObjectMapper();
 	static {
 		// 忽略在JSON字符串中存在但Java对象实际没有的属
@@ -44,26 +64,32 @@ public class CpcaExtractorImpl implements CpcaExtractor {
 		mapper.setSerializationInclusion(Include.NON_NULL);
 		mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
 	}
-	/**
-	 * 文件格式： adcode,name,longitude,latitude 500233000000,忠县,108.039002,30.299559
-	 * 410506000000,龙安区,114.301331,36.076225 . . .
-	 * 441700000000,阳江市,111.982589,21.857887
-	 */
-	private String cpcaCvsFile;
-	private Map<String, AddressInfo> addressInfoMap = new HashMap<>(3500);
+	// 当前使用的字典，reload 时整体替换；每次 transform 开始时取一次，之后一直用这个字典
+	private volatile CpcaDictionary dictionary;
+	private final Object reloadLock = new Object();
 	// 停用词包括: 省, 市, 特别行政区, 自治区。之所以 区 和 县 不作为停用词，是因为 区县 数目太多, 去掉 "区" 字 或者 "县" 字后很容易误配
 	private Pattern stopKey = Pattern.compile("([省市]|特别行政区|自治区)$");
 	// 自治区简写
 	private Map<String, String> zzqSimplify = new HashMap<>();
-	// 道路带省或市的
-	private List<String> loadNameSuffixs_2 = Arrays.asList("大路", "大道", "大街", "东路", "南路", "西路", "北路", "东街", "南街", "西街",
-			"北街", "街道", "胡同");
-	private List<String> loadNameSuffixs_1 = Arrays.asList("路", "街", "道");
-	// 村
-	private List<String> villageNameSuffixs_1 = Arrays.asList("村", "屯", "庄", "家", "山", "河", "沟", "湾", "坪", "塘", "坝",
-			"岗", "场", "湖", "岭", "堡", "坡", "峪", "岩", "溪", "凼", "岛");
-	//
-	AhoCorasickDoubleArrayTrie<MatchAddressInfo> acdat = new AhoCorasickDoubleArrayTrie<>();
+	// 以下设置可在创建后通过 setXxx 修改，transform 线程不加锁读取，均为 volatile
+	// 判断名称后面是否为单位的规则
+	private volatile UnitSuffixRules unitSuffixRules = UnitSuffixRules.defaults();
+	// transformAll 使用的线程池
+	private volatile CpcaExecution execution = CpcaExecution.commonPool();
+	// 结果缓存，默认不开启；缓存的结果是只读的
+	volatile Cache<ResultKey, CpcaSeg> resultCache;
+	// transform 统计，默认不开启
+	private volatile CpcaMetrics metrics;
+	// 前缀缓存，默认不开启
+	volatile PrefixCache prefixCache;
+	// 乡镇、村字典，默认不匹配乡镇、村
+	private volatile CpcaTownDictionary townDictionary;
+	// 模糊匹配，默认不开启
+	private volatile boolean fuzzyMatch;
+	// 输入规范化，默认不开启
+	private volatile CpcaNormalizer normalizer;
+	// 历史字典，默认没有
+	volatile CpcaHistory history;
 
 	/**
 	 * 
@@ -74,7 +100,15 @@ public class CpcaExtractorImpl implements CpcaExtractor {
 	 * http://www.stats.gov.cn/tjsj/tjbz/tjyqhdmhcxhfdm/
 	 */
 	public CpcaExtractorImpl(String cpcaCvsFile) {
-		this.cpcaCvsFile = cpcaCvsFile;
+		this(cpcaCvsFile, null);
+	}
+
+	/**
+	 * 
+	 * @param cpcaCvsFile 同上，snapshotFile 可以加载时可为 null
+	 * @param snapshotFile CpcaSnapshot 生成的快照文件，加载失败（不存在、版本不一致、校验失败）时改为加载 cpcaCvsFile
+	 */
+	public CpcaExtractorImpl(String cpcaCvsFile, String snapshotFile) {
 		zzqSimplify.put("内蒙古自治区", "内蒙古");
 		zzqSimplify.put("广西壮族自治区", "广西");
 		zzqSimplify.put("西藏自治区", "西藏");
@@ -140,7 +174,7 @@ public class CpcaExtractorImpl implements CpcaExtractor {
 		zzqSimplify.put("河口瑶族自治县", "河口县");
 		zzqSimplify.put("融水苗族自治县", "融水县");
 		try {
-			loadCpca();
+			this.dictionary = loadDictionary(cpcaCvsFile, snapshotFile, 1);
 		} catch (IOException e) {
 			logger.error(e.getMessage(), e);
 			throw new RuntimeException(e);
@@ -149,463 +183,1571 @@ public class CpcaExtractorImpl implements CpcaExtractor {
 
 	@Override
 	public CpcaSeg transform(String location, Map<String, String> umap, boolean strictlyMatch) {
-		if (location == null || location.trim().equals("")) {
-			return CpcaSeg.none();
+		return transform(dictionary, location, umap, strictlyMatch, new MatchContext());
+	}
+
+	/**
+	 * 不把 location 复制成 String；此时不使用结果缓存（缓存的 key 需要 String）
+	 */
+	@Override
+	public CpcaSeg transform(CharSequence location, Map<String, String> umap, boolean strictlyMatch) {
+		return transform(dictionary, location, umap, strictlyMatch, new MatchContext());
+	}
+
+	/**
+	 * 使用历史字典时不使用结果缓存、前缀缓存
+	 */
+	@Override
+	public CpcaSeg transformAsOf(String location, LocalDate asOf, Map<String, String> umap, boolean strictlyMatch) {
+		Preconditions.checkNotNull(asOf, "asOf不能为空");
+		CpcaHistory history = this.history;
+		return transform(history == null ? dictionary : history.dictionary(asOf), location, umap, strictlyMatch,
+				new MatchContext());
+	}
+
+	@Override
+	public String currentCode(String cpcaCode, LocalDate asOf) {
+		Preconditions.checkNotNull(asOf, "asOf不能为空");
+		CpcaDictionary dict = dictionary;
+		CpcaHistory history = this.history;
+		int code = Integer.parseInt(cpcaCode);
+		if (history != null) {
+			code = history.currentCode(code, asOf, dict);
+		}
+		AddressInfo addressInfo = code == 0 ? null : dict.addressInfo(code);
+		return addressInfo == null ? null : addressInfo.getCpcaCode();
+	}
+
+	/**
+	 * 每次调用重新生成
+	 */
+	@Override
+	public Map<String, String> currentCodes(LocalDate asOf) {
+		Preconditions.checkNotNull(asOf, "asOf不能为空");
+		CpcaDictionary dict = dictionary;
+		CpcaHistory history = this.history;
+		if (history != null) {
+			return history.currentCodes(asOf, dict);
+		}
+		Map<String, String> codes = new LinkedHashMap<>();
+		for (AddressInfo addressInfo : dict.addressInfos) {
+			codes.put(addressInfo.getCpcaCode(), addressInfo.getCpcaCode());
 		}
+		return Collections.unmodifiableMap(codes);
+	}
+
+	@Override
+	public CpcaSeg[] transformAll(String[] locations, Map<String, String> umap, boolean strictlyMatch) {
+		return transformAll(locations, umap, strictlyMatch, new CpcaSeg[locations.length], (dict, cpcaSeg) -> cpcaSeg);
+	}
+
+	@Override
+	public CompactCpcaSeg transformCompact(String location, Map<String, String> umap, boolean strictlyMatch) {
+		CpcaDictionary dict = dictionary;
+		return CompactCpcaSeg.of(dict, transform(dict, location, umap, strictlyMatch, new MatchContext()));
+	}
+
+	/**
+	 * 每个结果在工作线程中转换为 CompactCpcaSeg，不会同时持有整批 CpcaSeg
+	 */
+	@Override
+	public CompactCpcaSeg[] transformAllCompact(String[] locations, Map<String, String> umap, boolean strictlyMatch) {
+		return transformAll(locations, umap, strictlyMatch, new CompactCpcaSeg[locations.length], CompactCpcaSeg::of);
+	}
+
+	/**
+	 * 复用同一个结果对象逐行匹配，不使用结果缓存和前缀缓存（两者命中或写入时都要生成对象），每行不创建对象
+	 */
+	@Override
+	public void transformColumns(String[] locations, CpcaColumns columns, Map<String, String> umap,
+			boolean strictlyMatch) {
+		Preconditions.checkArgument(columns.capacity() >= locations.length, "columns的行数小于%s", locations.length);
+		CpcaDictionary dict = dictionary;
+		MatchContext ctx = new MatchContext(true);
+		for (int i = 0; i < locations.length; i++) {
+			columns.set(i, columnTransform(dict, locations[i], umap, strictlyMatch, ctx));
+		}
+	}
+
+	/**
+	 * 同上，逐行复用同一个 CharSlice
+	 */
+	@Override
+	public void transformColumns(char[] chars, int[] offsets, int rows, CpcaColumns columns,
+			Map<String, String> umap, boolean strictlyMatch) {
+		Preconditions.checkArgument(offsets.length > rows, "offsets的长度必须大于%s", rows);
+		Preconditions.checkArgument(columns.capacity() >= rows, "columns的行数小于%s", rows);
+		CpcaDictionary dict = dictionary;
+		MatchContext ctx = new MatchContext(true);
+		CharSlice slice = new CharSlice(chars, 0, 0);
+		for (int i = 0; i < rows; i++) {
+			slice.reset(offsets[i], offsets[i + 1] - offsets[i]);
+			columns.set(i, columnTransform(dict, slice, umap, strictlyMatch, ctx));
+		}
+	}
+
+	private CpcaSeg columnTransform(CpcaDictionary dict, CharSequence location, Map<String, String> umap,
+			boolean strictlyMatch, MatchContext ctx) {
+		CpcaMetrics metrics = this.metrics;
+		if (metrics == null) {
+			return normalizedColumnTransform(dict, location, umap, strictlyMatch, ctx);
+		}
+		long start = metrics.sampleLatency() ? System.nanoTime() : 0L;
+		ctx.keptHits = -1;
+		CpcaSeg cpcaSeg = normalizedColumnTransform(dict, location, umap, strictlyMatch, ctx);
+		metrics.record(cpcaSeg, location, ctx.keptHits, start);
+		return cpcaSeg;
+	}
+
+	private CpcaSeg normalizedColumnTransform(CpcaDictionary dict, CharSequence location, Map<String, String> umap,
+			boolean strictlyMatch, MatchContext ctx) {
+		CpcaNormalizer normalizer = this.normalizer;
+		CpcaNormalizer.Normalized normalized = normalizer == null || location == null ? null
+				: normalizer.normalizeWithOffsets(location);
+		if (normalized == null) {
+			return fuzzyExtract(dict, extract(dict, location, umap, strictlyMatch, ctx), location, umap,
+					strictlyMatch, ctx);
+		}
+		String text = normalized.text;
+		CpcaSeg cpcaSeg = fuzzyExtract(dict, extract(dict, text, umap, strictlyMatch, ctx), text, umap,
+				strictlyMatch, ctx);
+		return restoreOffsets(cpcaSeg, location, normalized);
+	}
+
+	@Override
+	public CpcaSeg locate(double longitude, double latitude) {
+		return locate(dictionary, longitude, latitude);
+	}
+
+	/**
+	 * 整批使用同一个版本的字典
+	 */
+	@Override
+	public CpcaSeg[] locateAll(double[] longitudes, double[] latitudes) {
+		Preconditions.checkArgument(longitudes.length == latitudes.length, "longitudes和latitudes的长度不一致");
+		CpcaDictionary dict = dictionary;
+		CpcaSeg[] results = new CpcaSeg[longitudes.length];
+		for (int i = 0; i < results.length; i++) {
+			results[i] = locate(dict, longitudes[i], latitudes[i]);
+		}
+		return results;
+	}
+
+	/**
+	 * 不创建结果对象
+	 */
+	@Override
+	public void locateCodes(double[] longitudes, double[] latitudes, int[] adcodes) {
+		Preconditions.checkArgument(longitudes.length == latitudes.length, "longitudes和latitudes的长度不一致");
+		Preconditions.checkArgument(adcodes.length >= longitudes.length, "adcodes的长度小于%s", longitudes.length);
+		CpcaDictionary dict = dictionary;
+		for (int i = 0; i < longitudes.length; i++) {
+			AddressInfo addressInfo = nearest(dict, longitudes[i], latitudes[i]);
+			adcodes[i] = addressInfo == null ? 0 : addressInfo.getCode();
+		}
+	}
+
+	private CpcaSeg locate(CpcaDictionary dict, double longitude, double latitude) {
+		AddressInfo addressInfo = nearest(dict, longitude, latitude);
 		CpcaSeg cpcaSeg = CpcaSeg.none();
-		AddressInfo lastAddressInfo = null;
-		String cpcaCode = null;
-		int endIndex = 0;
-		Hit<MatchAddressInfo> provMatchAddressInfo = null;
-		Hit<MatchAddressInfo> cityMatchAddressInfo = null;
-		boolean provMatched = false;
-		boolean cityMatched = false;
-		boolean provFullMatched = false;
-		boolean cityFullMatched = false;
-		boolean areaFullMatched = false;
-		List<Hit<MatchAddressInfo>> hits1 = acdat.parseText(location);
-		List<Hit<MatchAddressInfo>> hits2 = new ArrayList<>(hits1.size());
-		for (int i = 0; i < hits1.size(); i++) {
-			// 省、市、区 可能会两次匹配到，比如杭州市xxxxxx这个地址，会先后匹配到杭州、杭州市，这里只取杭州市这次匹配
-			Hit<MatchAddressInfo> hit = hits1.get(i);
-			if (hits2.contains(hit)) {
-				continue;
-			}
-			boolean exists = false;//区域已经存在，过滤到重复匹配到的
-			for (Hit<MatchAddressInfo> hitTmp : hits2) {
-				if (hitTmp.value.getAddressInfos() == hit.value.getAddressInfos()) {
-					exists = true;
+		cpcaSeg.setDictVersion(dict.version);
+		if (addressInfo != null) {
+			updateCpcaSeg(dict, cpcaSeg, addressInfo);
+		}
+		cpcaSeg.setOutcome(CpcaOutcome.of(cpcaSeg, false, false));
+		return cpcaSeg;
+	}
+
+	private AddressInfo nearest(CpcaDictionary dict, double longitude, double latitude) {
+		if (!(longitude >= -180 && longitude <= 180 && latitude >= -90 && latitude <= 90)) {
+			throw new IllegalArgumentException("经纬度超出范围: " + longitude + "," + latitude);
+		}
+		return dict.locator.nearest(longitude, latitude);
+	}
+
+	@Override
+	public void scan(Reader reader, Map<String, String> umap, boolean strictlyMatch, Consumer<CpcaSpan> consumer)
+			throws IOException {
+		scan(reader, umap, strictlyMatch, consumer, SCAN_CHUNK);
+	}
+
+	/**
+	 * 每次读入 chunk 个字，加上和下一块重叠的部分，只处理开始于前 chunk 个字的匹配；重叠部分保证这些匹配
+	 * 所需的内容（整个地址、判断单位时向后读取的字、跨过块尾的名称）都在缓冲区中，结果和不分块时相同
+	 * @param chunk 每块的字数
+	 */
+	void scan(Reader reader, Map<String, String> umap, boolean strictlyMatch, Consumer<CpcaSpan> consumer,
+			int chunk) throws IOException {
+		Preconditions.checkArgument(chunk > 0, "chunk必须大于0");
+		CpcaDictionary dict = dictionary;
+		int overlap = SCAN_MAX_SPAN + unitSuffixRules.reach() + 1 + dict.maxNameLength;
+		char[] buffer = new char[chunk + overlap];
+		CharSlice text = new CharSlice(buffer, 0, 0);
+		HitBuffer hits = new HitBuffer();
+		MatchContext ctx = new MatchContext();
+		long[] order = new long[64];
+		// buffer[0] 在整个文本中的位置
+		long base = 0;
+		int length = 0;
+		// 上一处地址的结束位置，之前开始的匹配不再处理
+		int resume = 0;
+		boolean eof = false;
+		while (!eof) {
+			while (length < buffer.length) {
+				int n = reader.read(buffer, length, buffer.length - length);
+				if (n < 0) {
+					eof = true;
 					break;
 				}
+				length += n;
 			}
-			if (exists) {
-				continue;
+			int limit = eof ? length : length - overlap;
+			hits.clear();
+			dict.acdat.parseText(text.reset(0, length), hits);
+			int size = hits.size();
+			if (order.length < size) {
+				order = new long[Math.max(size, order.length * 2)];
 			}
-			if (i < (hits1.size() - 1)) {
-				Hit<MatchAddressInfo> hit2 = hits1.get(i + 1);
-				if (hit2.value.getAddressInfos() == hit.value.getAddressInfos()) {
-					hit2.value.setFullName(true);
-					hits2.add(hit2);
+			// 按开始位置升序、长度降序
+			for (int i = 0; i < size; i++) {
+				order[i] = ((long) hits.begin(i) << 32) | (Integer.MAX_VALUE - hits.end(i));
+			}
+			Arrays.sort(order, 0, size);
+			int i = 0;
+			while (i < size) {
+				int begin = (int) (order[i] >>> 32);
+				if (begin >= limit) {
+					break;
+				}
+				if (begin < resume) {
+					i++;
 					continue;
 				}
-			}
-			if (i < (hits1.size() - 2)) {
-				Hit<MatchAddressInfo> hit2 = hits1.get(i + 2);
-				if (hit2.value.getAddressInfos() == hit.value.getAddressInfos()) {
-					hit2.value.setFullName(true);
-					hits2.add(hit2);
+				int end = Integer.MAX_VALUE - (int) order[i];
+				CpcaSeg cpcaSeg = scanExtract(dict, text, begin, end, order, i + 1, size, umap, strictlyMatch, ctx);
+				if (cpcaSeg == null) {
+					i++;
 					continue;
 				}
-			}
-			hits2.add(hit);
-		}
-		try {
-			for (Hit<MatchAddressInfo> hit : hits2) {
-				// 按省、市、区顺序来匹配和处理
-				MatchAddressInfo matchAddressInfo = hit.value;
-				boolean thisTurnProvMatched = !provMatched && matchAddressInfo.getAddressInfos().stream()
-						.map(AddressInfo::getRank).filter(k -> k == Rank.RANK_PROVINCE).findAny().isPresent();
-				provMatched = provMatched ? provMatched : thisTurnProvMatched;
-				provMatchAddressInfo = provMatchAddressInfo != null ? provMatchAddressInfo
-						: (thisTurnProvMatched ? hit : null);
-				boolean thisTurnCityMatched = !thisTurnProvMatched && !cityMatched && matchAddressInfo.getAddressInfos()
-						.stream().map(AddressInfo::getRank).filter(k -> k == Rank.RANK_CITY).findAny().isPresent();
-				cityMatched = cityMatched ? cityMatched : thisTurnCityMatched;
-				cityMatchAddressInfo = cityMatchAddressInfo != null ? cityMatchAddressInfo
-						: (thisTurnCityMatched ? hit : null);
-				if (thisTurnProvMatched) {
-					updateCpcaSegIndex(cpcaSeg, Rank.RANK_PROVINCE, hit.begin, hit.end);
-				} else if (thisTurnCityMatched) {
-					updateCpcaSegIndex(cpcaSeg, Rank.RANK_CITY, hit.begin, hit.end);
-				}
-				boolean thisTurnProvFullMatched = !provFullMatched && matchAddressInfo.isFullName()
-						&& matchAddressInfo.getAddressInfos().stream().map(AddressInfo::getRank)
-								.filter(k -> k == Rank.RANK_PROVINCE).findAny().isPresent();
-				provFullMatched = provFullMatched ? provFullMatched : thisTurnProvFullMatched;
-				boolean thisTurnCityFullMatched = !thisTurnProvFullMatched && !cityFullMatched
-						&& matchAddressInfo.isFullName() && matchAddressInfo.getAddressInfos().stream()
-								.map(AddressInfo::getRank).filter(k -> k == Rank.RANK_CITY).findAny().isPresent();
-				cityFullMatched = cityFullMatched ? cityFullMatched : thisTurnCityFullMatched;
-				areaFullMatched = areaFullMatched ? areaFullMatched
-						: (!thisTurnCityFullMatched && !areaFullMatched && matchAddressInfo.isFullName()
-								&& matchAddressInfo.getAddressInfos().stream().map(AddressInfo::getRank)
-										.filter(k -> k == Rank.RANK_COUNTY).findAny().isPresent());
-				String matchName = matchAddressInfo.getMatchName();
-				String firstCpca = umap == null ? null : umap.get(matchName);
-				AddressInfo currentAddressInfo = matchAddressInfo.matchAddressInfo(lastAddressInfo, firstCpca,
-						strictlyMatch);
-				if (currentAddressInfo == null && !provFullMatched && !cityFullMatched) {
-					currentAddressInfo = matchAddressInfo.matchAddressInfo(null, firstCpca, strictlyMatch);
-				}
-				if (currentAddressInfo != null) {
-					cpcaCode = currentAddressInfo.getCpcaCode();
-					endIndex = hit.end;
-					if (currentAddressInfo.rank == Rank.RANK_COUNTY) {
-						// 匹配到区县就停止
-						if (!provFullMatched && !cityFullMatched && !areaFullMatched) {
-							boolean isUnit = isUnit(endIndex, location);
-							if (isUnit) {
-								cpcaSeg.reset();
-								cpcaSeg.setAddress(location);
-								return cpcaSeg;
-							}
-						}
-						if (lastAddressInfo != null && !currentAddressInfo.belongTo(lastAddressInfo)) {
-							cpcaSeg.reset();
-						}
-						if (hit.begin > 0 && !provMatched && !cityMatched) {
-							// 区县前面有内容，但不是省和市
-							cpcaSeg.setAddress(location);
-							return cpcaSeg;
-						}
-						updateCpcaSeg(cpcaSeg, cpcaCode);
-						cpcaSeg.setCpcaCode(cpcaCode);
-						cpcaSeg.setAddress(substrLocation(location, hit.end));
-						updateCpcaSegIndex(cpcaSeg, matchAddressInfo.getAddressInfos().get(0).rank, hit.begin, hit.end);
-						return cpcaSeg;
+				// 后面的匹配和已匹配部分之间只有空白，且是已匹配结果的下级（如 浙江省 杭州市 西湖区）时并入同一处地址
+				int next = i + 1;
+				while (true) {
+					while (next < size && (int) (order[next] >>> 32) < end) {
+						next++;
 					}
-					else if (currentAddressInfo.rank == Rank.RANK_CITY) {
-						cityMatched = true;
-						cityFullMatched = matchAddressInfo.isFullName();
+					if (next == size) {
+						break;
 					}
-					else if (currentAddressInfo.rank == Rank.RANK_PROVINCE) {
-						provMatched = true;
-						provFullMatched = matchAddressInfo.isFullName();
+					int nextBegin = (int) (order[next] >>> 32);
+					int nextEnd = Integer.MAX_VALUE - (int) order[next];
+					if (nextEnd - begin > SCAN_MAX_SPAN || !CharSequences.isBlank(text, end, nextBegin)) {
+						break;
 					}
-					lastAddressInfo = currentAddressInfo;
-				} else if (provFullMatched || cityFullMatched) {
-					;
-				} else if (matchAddressInfo.getAddressInfos().get(0).rank == Rank.RANK_COUNTY && (cityMatched)
-						&& matchName.startsWith(simplifyName(lastAddressInfo.getName()))) {
-					// 存在市、县同名情况 && 县同名情况，当作未匹配处理
-					cpcaCode = null;
-				} else if (cityMatched && isArea(cityMatchAddressInfo.end, location)) {
-					// 处理如杭州区
-					cpcaCode = null;
-				} else if (provMatched && isArea(provMatchAddressInfo.end, location)) {
-					// 处理如杭州区
-					cpcaCode = null;
-				}
-			}
-			if (cpcaCode != null) {
-				// 匹配到省或市
-				if (provFullMatched || cityFullMatched) {
-					updateCpcaSeg(cpcaSeg, cpcaCode);
-					cpcaSeg.setCpcaCode(cpcaCode);
-					cpcaSeg.setAddress(location.substring(endIndex));
-					return cpcaSeg;
-				} else {
-					if (provMatched && cityMatched) {
-						if (cpcaSeg.getCityNameIndex().getBeginIndex()
-								- cpcaSeg.getProvinceNameIndex().getEndIndex() == 0) {
-							updateCpcaSeg(cpcaSeg, cpcaCode);
-							cpcaSeg.setCpcaCode(cpcaCode);
-							cpcaSeg.setAddress(location.substring(endIndex));
-							return cpcaSeg;
-						} else if (cpcaSeg.getProvinceNameIndex().getEndIndex() < cpcaSeg.getCityNameIndex()
-								.getBeginIndex()
-								&& location.substring(cpcaSeg.getProvinceNameIndex().getEndIndex(),
-										cpcaSeg.getCityNameIndex().getBeginIndex()).trim().equals("")) {
-							updateCpcaSeg(cpcaSeg, cpcaCode);
-							cpcaSeg.setCpcaCode(cpcaCode);
-							cpcaSeg.setAddress(location.substring(endIndex));
-							return cpcaSeg;
-						} else {
+					CpcaSeg extended = scanExtract(dict, text, begin, nextEnd, order, next + 1, size, umap,
+							strictlyMatch, ctx);
+					if (extended == null && ctx.unitRejected) {
+						// 整段是单位名称，如 杭州西湖中学
+						cpcaSeg = null;
+						break;
+					}
+					if (extended == null || !isDescendant(cpcaSeg.getCpcaCode(), extended.getCpcaCode())) {
+						break;
+					}
+					cpcaSeg = extended;
+					end = nextEnd;
+				}
+				if (cpcaSeg == null) {
+					i++;
+					continue;
+				}
+				int spanBegin = Integer.MAX_VALUE;
+				int spanEnd = 0;
+				for (CpcaIndex index : new CpcaIndex[] { cpcaSeg.getProvinceNameIndex(), cpcaSeg.getCityNameIndex(),
+						cpcaSeg.getAreaNameIndex() }) {
+					if (index != null) {
+						spanBegin = Math.min(spanBegin, index.getBeginIndex());
+						spanEnd = Math.max(spanEnd, index.getEndIndex());
+					}
+				}
+				spanBegin += begin;
+				spanEnd += begin;
+				consumer.accept(new CpcaSpan(base + spanBegin, new String(buffer, spanBegin, spanEnd - spanBegin),
+						cpcaSeg));
+				resume = spanEnd;
+				i++;
+			}
+			if (!eof) {
+				System.arraycopy(buffer, limit, buffer, 0, length - limit);
+				length -= limit;
+				base += limit;
+				resume = Math.max(0, resume - limit);
+			}
+		}
+	}
+
+	/**
+	 * 对 text 中从 begin 开始、到 end 之后判断单位所需的位置为止的内容做 transform，遇到下一个匹配时截止
+	 * @param order 按开始位置排序的匹配，从第 next 个起为 end 之后的匹配
+	 * @return 没有匹配到省、市、区时返回 null
+	 */
+	private CpcaSeg scanExtract(CpcaDictionary dict, CharSlice text, int begin, int end, long[] order, int next,
+			int size, Map<String, String> umap, boolean strictlyMatch, MatchContext ctx) {
+		int windowEnd = Math.min(end + unitSuffixRules.reach() + 1, text.length());
+		while (next < size) {
+			int nextBegin = (int) (order[next] >>> 32);
+			if (nextBegin >= end) {
+				windowEnd = Math.min(windowEnd, nextBegin);
+				break;
+			}
+			next++;
+		}
+		CpcaSeg cpcaSeg = extract(dict, text.subSequence(begin, windowEnd), umap, strictlyMatch, ctx);
+		return cpcaSeg.hasPca() ? cpcaSeg : null;
+	}
+
+	/**
+	 * code 是否为 parent 的下级，如 330106 是 330100、330000 的下级
+	 */
+	private static boolean isDescendant(String parent, String code) {
+		int p = Integer.parseInt(parent);
+		int c = Integer.parseInt(code);
+		if (p == c) {
+			return false;
+		}
+		if (p % Rank.RANK_PROVINCE.divisor == 0) {
+			return c / Rank.RANK_PROVINCE.divisor == p / Rank.RANK_PROVINCE.divisor;
+		}
+		return p % Rank.RANK_CITY.divisor == 0 && c / Rank.RANK_CITY.divisor == p / Rank.RANK_CITY.divisor;
+	}
+
+	/**
+	 * 
+	 * @param locations
+	 * @param umap
+	 * @param strictlyMatch
+	 * @param results 和 locations 同样长度
+	 * @param finisher 把 transform 的结果转为 results 的元素
+	 * @return results
+	 */
+	private <T> T[] transformAll(String[] locations, Map<String, String> umap, boolean strictlyMatch, T[] results,
+			BiFunction<CpcaDictionary, CpcaSeg, ? extends T> finisher) {
+		// 每个子任务至少处理 MIN_BATCH_CHUNK 个地址，地址较短，任务切得太碎调度开销会超过解析本身
+		CpcaExecution execution = this.execution;
+		int chunk = Math.max(MIN_BATCH_CHUNK, locations.length / (execution.parallelism() * 8) + 1);
+		// 整批使用同一个版本的字典
+		CpcaDictionary dict = dictionary;
+		TransformTask<T> task = new TransformTask<>(dict, locations, umap, strictlyMatch, results, finisher, 0,
+				locations.length, chunk);
+		if (locations.length <= chunk) {
+			task.compute();
+		} else if (execution.forkJoinPool() != null) {
+			execution.forkJoinPool().invoke(task);
+		} else {
+			execution.invokeAll((locations.length + chunk - 1) / chunk, i -> {
+				MatchContext ctx = new MatchContext();
+				for (int j = i * chunk, end = Math.min(j + chunk, locations.length); j < end; j++) {
+					results[j] = finisher.apply(dict, transform(dict, locations[j], umap, strictlyMatch, ctx));
+				}
+			});
+		}
+		return results;
+	}
+
+	/**
+	 * 在 execution 中执行 transform
+	 */
+	@Override
+	public CompletableFuture<CpcaSeg> transformAsync(String location, Map<String, String> umap,
+			boolean strictlyMatch) {
+		return CompletableFuture.supplyAsync(() -> transform(location, umap, strictlyMatch), execution.executor());
+	}
+
+	public void setExecution(CpcaExecution execution) {
+		this.execution = execution;
+	}
+
+	public void setMetrics(CpcaMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * 设置判断单位的规则，已缓存的结果按原规则得到，一并清空
+	 * @param unitSuffixRules
+	 */
+	public void setUnitSuffixRules(UnitSuffixRules unitSuffixRules) {
+		this.unitSuffixRules = Preconditions.checkNotNull(unitSuffixRules, "unitSuffixRules不能为空");
+		invalidateCaches();
+	}
+
+	/**
+	 * 设置乡镇、村字典，见 CpcaTownDictionary；为 null 时不匹配乡镇、村。已缓存的结果一并清空
+	 * @param townDictionary
+	 */
+	public void setTownDictionary(CpcaTownDictionary townDictionary) {
+		this.townDictionary = townDictionary;
+		invalidateCaches();
+	}
+
+	/**
+	 * 是否在精确匹配不到时模糊匹配地址开头写错一个字的名称，见 CpcaFuzzyIndex。已缓存的结果一并清空
+	 * @param fuzzyMatch
+	 */
+	public void setFuzzyMatch(boolean fuzzyMatch) {
+		this.fuzzyMatch = fuzzyMatch;
+		invalidateCaches();
+	}
+
+	/**
+	 * 设置匹配前的输入规范化，见 CpcaNormalizer；为 null 时按原地址匹配。已缓存的结果一并清空
+	 * @param normalizer
+	 */
+	public void setNormalizer(CpcaNormalizer normalizer) {
+		this.normalizer = normalizer;
+		invalidateCaches();
+	}
+
+	/**
+	 * 加载多个历史字典，见 CpcaHistory；为 null 或空时清除已加载的历史字典
+	 * @param cpcaCvsFiles 生效日期及该日期起使用的 cpca 文件，格式同构造函数
+	 * @throws IOException
+	 */
+	public void setHistory(Map<LocalDate, String> cpcaCvsFiles) throws IOException {
+		this.history = cpcaCvsFiles == null || cpcaCvsFiles.isEmpty() ? null : loadHistory(new TreeMap<>(cpcaCvsFiles));
+	}
+
+	public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+		setExecution(CpcaExecution.forkJoinPool(forkJoinPool));
+	}
+
+	/**
+	 * 开启结果缓存，按 (location, strictlyMatch, umap) 缓存，umap 按对象引用区分；超过 maximumSize 时按 W-TinyLFU 淘汰
+	 * @param maximumSize
+	 */
+	public void setResultCache(long maximumSize) {
+		this.resultCache = Caffeine.newBuilder().maximumSize(maximumSize).recordStats().build();
+	}
+
+	/**
+	 * 开启前缀缓存，开头的省、市、区部分相同的地址共用缓存结果，见 PrefixCache
+	 * @param maximumSize
+	 */
+	public void setPrefixCache(long maximumSize) {
+		this.prefixCache = new PrefixCache(maximumSize);
+	}
+
+	/**
+	 * 在后台线程加载新字典，加载完成后用一次引用赋值替换当前字典，并清空缓存。
+	 * 替换前已开始的 transform、transformAll 不加锁，继续用旧字典完成；结果的 getDictVersion() 为所用字典的版本
+	 * @param cpcaCvsFile
+	 * @param snapshotFile 可为 null，同构造函数
+	 * @return 新字典的版本；加载失败时异常结束，继续使用原字典
+	 */
+	@Override
+	public CompletableFuture<Integer> reload(String cpcaCvsFile, String snapshotFile) {
+		CompletableFuture<Integer> future = new CompletableFuture<>();
+		Thread thread = new Thread(() -> {
+			try {
+				future.complete(doReload(cpcaCvsFile, snapshotFile));
+			} catch (Throwable e) {
+				logger.error("cpca字典重新加载失败", e);
+				future.completeExceptionally(e);
+			}
+		}, "cpca-reload");
+		thread.setDaemon(true);
+		thread.start();
+		return future;
+	}
+
+	private int doReload(String cpcaCvsFile, String snapshotFile) throws IOException {
+		// 多次 reload 按顺序加载、替换
+		synchronized (reloadLock) {
+			CpcaDictionary dict = loadDictionary(cpcaCvsFile, snapshotFile, dictionary.version + 1);
+			this.dictionary = dict;
+			invalidateCaches();
+			logger.info("cpca字典已切换到版本 {}", dict.version);
+			return dict.version;
+		}
+	}
+
+	private void invalidateCaches() {
+		Cache<ResultKey, CpcaSeg> resultCache = this.resultCache;
+		if (resultCache != null) {
+			resultCache.invalidateAll();
+		}
+		PrefixCache prefixCache = this.prefixCache;
+		if (prefixCache != null) {
+			prefixCache.invalidateAll();
+		}
+	}
+
+	@Override
+	public int dictionaryVersion() {
+		return dictionary.version;
+	}
+
+	/**
+	 * 名称、编码使用当前字典中预先编码好的字节
+	 */
+	@Override
+	public CpcaJsonEncoder jsonEncoder(boolean includeNulls) {
+		return new CpcaJsonEncoder(includeNulls, value -> dictionary.jsonBytes.get(value));
+	}
+
+	@Override
+	public CacheStats cacheStats() {
+		Cache<ResultKey, CpcaSeg> resultCache = this.resultCache;
+		return resultCache == null ? CacheStats.empty() : resultCache.stats();
+	}
+
+	@Override
+	public CacheStats prefixCacheStats() {
+		PrefixCache prefixCache = this.prefixCache;
+		return prefixCache == null ? CacheStats.empty() : prefixCache.stats();
+	}
+
+	/**
+	 * 
+	 * @param location
+	 * @param umap
+	 * @param strictlyMatch
+	 * @param ctx 匹配状态，同一线程可重复使用
+	 * @return
+	 */
+	private CpcaSeg transform(CpcaDictionary dict, CharSequence location, Map<String, String> umap,
+			boolean strictlyMatch, MatchContext ctx) {
+		CpcaMetrics metrics = this.metrics;
+		if (metrics == null) {
+			return normalizedTransform(dict, location, umap, strictlyMatch, ctx);
+		}
+		long start = metrics.sampleLatency() ? System.nanoTime() : 0L;
+		ctx.keptHits = -1;
+		CpcaSeg cpcaSeg = normalizedTransform(dict, location, umap, strictlyMatch, ctx);
+		metrics.record(cpcaSeg, location, ctx.keptHits, start);
+		return cpcaSeg;
+	}
+
+	/**
+	 * 设置了 CpcaNormalizer 时按规范化后的地址匹配（结果缓存、前缀缓存也按规范化后的地址），再把位置和 address 换回原地址；
+	 * 不需要规范化的地址直接匹配
+	 */
+	private CpcaSeg normalizedTransform(CpcaDictionary dict, CharSequence location, Map<String, String> umap,
+			boolean strictlyMatch, MatchContext ctx) {
+		CpcaNormalizer normalizer = this.normalizer;
+		CpcaNormalizer.Normalized normalized = normalizer == null || location == null ? null
+				: normalizer.normalizeWithOffsets(location);
+		if (normalized == null) {
+			return cachedTransform(dict, location, umap, strictlyMatch, ctx);
+		}
+		return restoreOffsets(cachedTransform(dict, normalized.text, umap, strictlyMatch, ctx), location, normalized);
+	}
+
+	/**
+	 * 把按规范化后的地址得到的位置换为原地址中的位置，address 改为原地址中对应的结尾部分
+	 * @return 只读的结果（缓存命中时）换为可修改的副本
+	 */
+	private static CpcaSeg restoreOffsets(CpcaSeg cpcaSeg, CharSequence location, CpcaNormalizer.Normalized normalized) {
+		if (cpcaSeg instanceof UnmodifiableCpcaSeg) {
+			cpcaSeg = cpcaSeg.copy();
+		}
+		restoreOffsets(cpcaSeg.getProvinceNameIndex(), normalized);
+		restoreOffsets(cpcaSeg.getCityNameIndex(), normalized);
+		restoreOffsets(cpcaSeg.getAreaNameIndex(), normalized);
+		restoreOffsets(cpcaSeg.getTownNameIndex(), normalized);
+		restoreOffsets(cpcaSeg.getVillageNameIndex(), normalized);
+		int addressLength = cpcaSeg.addressLength();
+		if (addressLength >= 0) {
+			// address 总是规范化后地址的结尾部分
+			cpcaSeg.setAddress(location, normalized.begin(normalized.text.length() - addressLength));
+		}
+		return cpcaSeg;
+	}
+
+	private static void restoreOffsets(CpcaIndex cpcaIndex, CpcaNormalizer.Normalized normalized) {
+		if (cpcaIndex != null) {
+			cpcaIndex.setBeginIndex(normalized.begin(cpcaIndex.getBeginIndex()));
+			cpcaIndex.setEndIndex(normalized.end(cpcaIndex.getEndIndex()));
+		}
+	}
+
+	private CpcaSeg cachedTransform(CpcaDictionary dict, CharSequence location, Map<String, String> umap,
+			boolean strictlyMatch, MatchContext ctx) {
+		Cache<ResultKey, CpcaSeg> resultCache = this.resultCache;
+		// 历史字典的结果不缓存，以免和当前字典的结果互相替换
+		if (resultCache == null || dict.since != null || !(location instanceof String)) {
+			return prefixCachedExtract(dict, location, umap, strictlyMatch, ctx);
+		}
+		ResultKey key = new ResultKey((String) location, umap, strictlyMatch);
+		CpcaSeg cpcaSeg = resultCache.get(key,
+				k -> CpcaSeg.unmodifiable(prefixCachedExtract(dict, location, umap, strictlyMatch, ctx)));
+		if (cpcaSeg.getDictVersion() != dict.version) {
+			// reload 前用旧字典得到的结果
+			cpcaSeg = CpcaSeg.unmodifiable(prefixCachedExtract(dict, location, umap, strictlyMatch, ctx));
+			resultCache.put(key, cpcaSeg);
+		}
+		return cpcaSeg;
+	}
+
+	/**
+	 * 乡镇、村取决于区县之后的内容，在前缀缓存之后匹配，前缀缓存中的结果不含乡镇、村
+	 */
+	private CpcaSeg prefixCachedExtract(CpcaDictionary dict, CharSequence location, Map<String, String> umap,
+			boolean strictlyMatch, MatchContext ctx) {
+		PrefixCache prefixCache = this.prefixCache;
+		CpcaSeg cpcaSeg;
+		if (prefixCache == null || dict.since != null || location == null) {
+			cpcaSeg = extract(dict, location, umap, strictlyMatch, ctx);
+		} else {
+			cpcaSeg = prefixCache.get(dict, location, umap, strictlyMatch, ctx);
+			if (cpcaSeg == null) {
+				cpcaSeg = extract(dict, location, umap, strictlyMatch, ctx);
+				prefixCache.put(dict, location, umap, strictlyMatch, ctx, cpcaSeg);
+			}
+		}
+		cpcaSeg = fuzzyExtract(dict, cpcaSeg, location, umap, strictlyMatch, ctx);
+		matchTown(cpcaSeg, location);
+		return cpcaSeg;
+	}
+
+	/**
+	 * 开启模糊匹配且精确匹配不到任何省、市、区时（不含因单位放弃的），把地址开头和某个名称编辑距离为 1 的部分改为该名称后重新匹配，
+	 * 如 杭洲市西湖区 按 杭州市西湖区 匹配，结果中记录改正前后的名称，位置按原地址调整。
+	 * 从长到短尝试开头的各个长度；相差一个字的名称有多个时（如 杭洲市 和 杭州市、株洲市 都相差一个字）取改正后匹配到的级别最低的，
+	 * 级别相同时取匹配到的省、市、区更长的（如 深训市南山区 取 深圳市南山区 而不是 深州市），仍相同时不改正；有候选改正后同名的有多个（无法确定）时也不改正
+	 * @return 没有可用的改正时返回 cpcaSeg
+	 */
+	private CpcaSeg fuzzyExtract(CpcaDictionary dict, CpcaSeg cpcaSeg, CharSequence location, Map<String, String> umap,
+			boolean strictlyMatch, MatchContext ctx) {
+		if (!fuzzyMatch || location == null
+				|| (cpcaSeg.getOutcome() != CpcaOutcome.NO_MATCH && cpcaSeg.getOutcome() != CpcaOutcome.AMBIGUOUS)) {
+			return cpcaSeg;
+		}
+		CpcaFuzzyIndex fuzzyIndex = dict.fuzzyIndex();
+		UnitSuffixRules rules = this.unitSuffixRules;
+		// 每次尝试都会覆盖 ctx.keptHits，返回前换为所采用的匹配的
+		int exactHits = ctx.keptHits;
+		boolean tried = false;
+		for (int length = Math.min(location.length(), fuzzyIndex.maxNameLength + 1);
+				length >= CpcaFuzzyIndex.MIN_NAME_LENGTH; length--) {
+			List<String> names = fuzzyIndex.lookup(location, length);
+			// 复用结果对象时每次匹配都会覆盖上一个候选的结果，比较时用记下的值
+			CpcaSeg best = null;
+			String bestName = null;
+			CpcaOutcome bestOutcome = null;
+			int bestEnd = 0;
+			String bestCode = null;
+			int bestHits = 0;
+			boolean tie = false;
+			boolean ambiguous = false;
+			for (String name : names) {
+				int common = 0;
+				while (common < name.length() && common < length && name.charAt(common) == location.charAt(common)) {
+					common++;
+				}
+				if (rules.isUnit(location, common)) {
+					// 不同处是单位后缀，是另一个词而不是写错，如 中山路 不是 中山市
+					continue;
+				}
+				CpcaSeg correctedSeg = correct(dict, location, length, name, umap, strictlyMatch, ctx);
+				tried = true;
+				if (correctedSeg == null) {
+					// 改正后同名的有多个（如 朝杨区 改为 朝阳区），不能因此取其他可能性更小的候选（如 朝天区）
+					ambiguous |= ctx.ambiguous;
+					continue;
+				}
+				int compare = bestName == null ? 1 : bestOutcome.compareTo(correctedSeg.getOutcome());
+				if (compare == 0) {
+					compare = Integer.compare(pcaEnd(correctedSeg), bestEnd);
+				}
+				if (compare > 0) {
+					best = correctedSeg;
+					bestName = name;
+					bestOutcome = correctedSeg.getOutcome();
+					bestEnd = pcaEnd(correctedSeg);
+					bestCode = correctedSeg.getCpcaCode();
+					bestHits = ctx.keptHits;
+					tie = false;
+				} else if (compare == 0 && !bestCode.equals(correctedSeg.getCpcaCode())) {
+					// 同一地区的全称和简称（如 黑龙省 和 黑龙江省、黑龙江 都相差一个字）不算
+					tie = true;
+				}
+			}
+			if (bestName != null && !tie && !ambiguous) {
+				if (names.size() == 1 || !ctx.reusesResult()) {
+					ctx.keptHits = bestHits;
+					return best;
+				}
+				return correct(dict, location, length, bestName, umap, strictlyMatch, ctx);
+			}
+		}
+		if (tried && ctx.reusesResult()) {
+			// 复用结果对象时 cpcaSeg 已被尝试的改正覆盖
+			return extract(dict, location, umap, strictlyMatch, ctx);
+		}
+		ctx.keptHits = exactHits;
+		return cpcaSeg;
+	}
+
+	/**
+	 * 结果中省、市、区名称的结束位置
+	 */
+	private static int pcaEnd(CpcaSeg cpcaSeg) {
+		int end = 0;
+		for (CpcaIndex index : new CpcaIndex[] { cpcaSeg.getProvinceNameIndex(), cpcaSeg.getCityNameIndex(),
+				cpcaSeg.getAreaNameIndex() }) {
+			if (index != null) {
+				end = Math.max(end, index.getEndIndex());
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * 把 location 的 [0, length) 改为 name 后匹配
+	 * @return 匹配不到或 name 不在结果中时返回 null
+	 */
+	private CpcaSeg correct(CpcaDictionary dict, CharSequence location, int length, String name,
+			Map<String, String> umap, boolean strictlyMatch, MatchContext ctx) {
+		String corrected = name + location.subSequence(length, location.length());
+		CpcaSeg cpcaSeg = extract(dict, corrected, umap, strictlyMatch, ctx);
+		int delta = length - name.length();
+		boolean covered = false;
+		for (CpcaIndex index : new CpcaIndex[] { cpcaSeg.getProvinceNameIndex(), cpcaSeg.getCityNameIndex(),
+				cpcaSeg.getAreaNameIndex() }) {
+			if (index != null) {
+				covered |= index.getBeginIndex() == 0 && index.getEndIndex() >= name.length();
+				if (index.getBeginIndex() > 0) {
+					index.setBeginIndex(index.getBeginIndex() + delta);
+				}
+				index.setEndIndex(index.getEndIndex() + delta);
+			}
+		}
+		if (!covered || !cpcaSeg.hasPca()) {
+			return null;
+		}
+		cpcaSeg.setMisspelledName(location.subSequence(0, length).toString());
+		cpcaSeg.setCorrectedName(name);
+		return cpcaSeg;
+	}
+
+	/**
+	 * 匹配到区县且区县后面还有内容时，在 address 中查找该区县下的乡镇、村
+	 * @param cpcaSeg
+	 * @param location
+	 */
+	private void matchTown(CpcaSeg cpcaSeg, CharSequence location) {
+		CpcaTownDictionary towns = this.townDictionary;
+		if (towns == null || cpcaSeg.getAreaName() == null || cpcaSeg.addressLength() <= 0) {
+			return;
+		}
+		// address 总是 location 的结尾部分
+		towns.match(cpcaSeg, Integer.parseInt(cpcaSeg.getCpcaCode()), location,
+				location.length() - cpcaSeg.addressLength());
+	}
+
+	private CpcaSeg extract(CpcaDictionary dict, CharSequence location, Map<String, String> umap, boolean strictlyMatch,
+			MatchContext ctx) {
+		CpcaSeg cpcaSeg = match(dict, location, umap, strictlyMatch, ctx);
+		cpcaSeg.setOutcome(CpcaOutcome.of(cpcaSeg, ctx.unitRejected, ctx.ambiguous));
+		ctx.keptHits = ctx.hits.size();
+		return cpcaSeg;
+	}
+
+	private CpcaSeg match(CpcaDictionary dict, CharSequence location, Map<String, String> umap, boolean strictlyMatch,
+			MatchContext ctx) {
+		ctx.reset();
+		CpcaSeg cpcaSeg = ctx.newCpcaSeg();
+		cpcaSeg.setDictVersion(dict.version);
+		if (location == null || CharSequences.isBlank(location)) {
+			return cpcaSeg;
+		}
+		AddressInfo lastAddressInfo = null;
+		AddressInfo cpcaAddressInfo = null;
+		int endIndex = 0;
+		int provMatchEnd = -1;
+		int cityMatchEnd = -1;
+		boolean provMatched = false;
+		boolean cityMatched = false;
+		boolean provFullMatched = false;
+		boolean cityFullMatched = false;
+		boolean areaFullMatched = false;
+		HitBuffer hits = ctx.hits;
+		CpcaTrie<MatchAddressInfo> acdat = dict.acdat;
+		acdat.parseText(location, hits);
+		dedupHits(hits, acdat);
+		for (int i = 0; i < hits.size(); i++) {
+			// 按省、市、区顺序来匹配和处理
+			ctx.consumed = i + 1;
+			MatchAddressInfo matchAddressInfo = acdat.get(hits.value(i));
+			int hitBegin = hits.begin(i);
+			int hitEnd = hits.end(i);
+			boolean fullName = hits.isFullName(i);
+			boolean thisTurnProvMatched = !provMatched && matchAddressInfo.hasRank(Rank.RANK_PROVINCE);
+			provMatched = provMatched ? provMatched : thisTurnProvMatched;
+			provMatchEnd = provMatchEnd >= 0 ? provMatchEnd : (thisTurnProvMatched ? hitEnd : -1);
+			boolean thisTurnCityMatched = !thisTurnProvMatched && !cityMatched && matchAddressInfo.hasRank(Rank.RANK_CITY);
+			cityMatched = cityMatched ? cityMatched : thisTurnCityMatched;
+			cityMatchEnd = cityMatchEnd >= 0 ? cityMatchEnd : (thisTurnCityMatched ? hitEnd : -1);
+			if (thisTurnProvMatched) {
+				updateCpcaSegIndex(ctx, cpcaSeg, Rank.RANK_PROVINCE, hitBegin, hitEnd);
+			} else if (thisTurnCityMatched) {
+				updateCpcaSegIndex(ctx, cpcaSeg, Rank.RANK_CITY, hitBegin, hitEnd);
+			}
+			boolean thisTurnProvFullMatched = !provFullMatched && fullName && matchAddressInfo.hasRank(Rank.RANK_PROVINCE);
+			provFullMatched = provFullMatched ? provFullMatched : thisTurnProvFullMatched;
+			boolean thisTurnCityFullMatched = !thisTurnProvFullMatched && !cityFullMatched && fullName
+					&& matchAddressInfo.hasRank(Rank.RANK_CITY);
+			cityFullMatched = cityFullMatched ? cityFullMatched : thisTurnCityFullMatched;
+			areaFullMatched = areaFullMatched ? areaFullMatched
+					: (!thisTurnCityFullMatched && !areaFullMatched && fullName
+							&& matchAddressInfo.hasRank(Rank.RANK_COUNTY));
+			String matchName = matchAddressInfo.getMatchName();
+			int firstCpca = umap == null ? -1 : parseCpcaCode(umap.get(matchName));
+			AddressInfo currentAddressInfo = matchAddressInfo.matchAddressInfo(lastAddressInfo, firstCpca,
+					strictlyMatch);
+			if (currentAddressInfo == null && !provFullMatched && !cityFullMatched) {
+				currentAddressInfo = matchAddressInfo.matchAddressInfo(null, firstCpca, strictlyMatch);
+			}
+			if (currentAddressInfo == null && strictlyMatch && firstCpca < 0 && matchAddressInfo.isAmbiguous()) {
+				ctx.ambiguous = true;
+			}
+			if (currentAddressInfo != null) {
+				cpcaAddressInfo = currentAddressInfo;
+				endIndex = hitEnd;
+				if (currentAddressInfo.rank == Rank.RANK_COUNTY) {
+					// 匹配到区县就停止
+					if (!provFullMatched && !cityFullMatched && !areaFullMatched) {
+						boolean isUnit = isUnit(endIndex, location, ctx);
+						if (isUnit) {
 							cpcaSeg.reset();
-							cpcaSeg.setAddress(location);
+							ctx.unitRejected = true;
+							ctx.address(cpcaSeg, AddressRule.WHOLE, location, 0);
 							return cpcaSeg;
 						}
 					}
-					int beginIdx = -1;
-					int endIdx = -1;
-					if (provMatched) {
-						beginIdx = cpcaSeg.getProvinceNameIndex().getBeginIndex();
-						endIdx = cpcaSeg.getProvinceNameIndex().getEndIndex();
-					} else if (cityMatched) {
-						beginIdx = cpcaSeg.getCityNameIndex().getBeginIndex();
-						endIdx = cpcaSeg.getCityNameIndex().getEndIndex();
+					if (lastAddressInfo != null && !currentAddressInfo.belongTo(lastAddressInfo)) {
+						cpcaSeg.reset();
 					}
-					if (beginIdx >= 0) {
-						boolean isUnit = isUnit(endIdx, location);
-						if (isUnit) {
-							// 如果是单位（如镇、村、大厦、中学等）
-							cpcaSeg.reset();
-							cpcaSeg.setAddress(location);
-							return cpcaSeg;
-						}
-						if (beginIdx > 0) {
-							// 未匹配到省、市全称的，匹配到省或市，认为是地址
-							cpcaSeg.reset();
-							cpcaSeg.setAddress(location);
-							return cpcaSeg;
-						}
-						updateCpcaSeg(cpcaSeg, cpcaCode);
-						cpcaSeg.setCpcaCode(cpcaCode);
-						cpcaSeg.setAddress(location.substring(endIndex));
+					if (hitBegin > 0 && !provMatched && !cityMatched) {
+						// 区县前面有内容，但不是省和市
+						ctx.address(cpcaSeg, AddressRule.WHOLE, location, 0);
+						return cpcaSeg;
+					}
+					updateCpcaSeg(dict, cpcaSeg, cpcaAddressInfo);
+					ctx.address(cpcaSeg, AddressRule.SUBSTRING_OR_NULL, location, hitEnd);
+					updateCpcaSegIndex(ctx, cpcaSeg, matchAddressInfo.getFirstRank(), hitBegin, hitEnd);
+					return cpcaSeg;
+				}
+				else if (currentAddressInfo.rank == Rank.RANK_CITY) {
+					cityMatched = true;
+					cityFullMatched = fullName;
+				}
+				else if (currentAddressInfo.rank == Rank.RANK_PROVINCE) {
+					provMatched = true;
+					provFullMatched = fullName;
+				}
+				lastAddressInfo = currentAddressInfo;
+			} else if (provFullMatched || cityFullMatched) {
+				;
+			} else if (matchAddressInfo.getFirstRank() == Rank.RANK_COUNTY && (cityMatched)
+					&& matchName.startsWith(lastAddressInfo.getSimplifyName())) {
+				// 存在市、县同名情况 && 县同名情况，当作未匹配处理
+				cpcaAddressInfo = null;
+			} else if (cityMatched && isArea(cityMatchEnd, location, ctx)) {
+				// 处理如杭州区
+				cpcaAddressInfo = null;
+			} else if (provMatched && isArea(provMatchEnd, location, ctx)) {
+				// 处理如杭州区
+				cpcaAddressInfo = null;
+			}
+		}
+		ctx.exhausted = true;
+		if (cpcaAddressInfo != null) {
+			// 匹配到省或市
+			if (provFullMatched || cityFullMatched) {
+				updateCpcaSeg(dict, cpcaSeg, cpcaAddressInfo);
+				ctx.address(cpcaSeg, AddressRule.SUBSTRING, location, endIndex);
+				return cpcaSeg;
+			} else {
+				if (provMatched && cityMatched) {
+					if (cpcaSeg.getCityNameIndex().getBeginIndex()
+							- cpcaSeg.getProvinceNameIndex().getEndIndex() == 0) {
+						updateCpcaSeg(dict, cpcaSeg, cpcaAddressInfo);
+						ctx.address(cpcaSeg, AddressRule.SUBSTRING, location, endIndex);
+						return cpcaSeg;
+					} else if (cpcaSeg.getProvinceNameIndex().getEndIndex() < cpcaSeg.getCityNameIndex()
+							.getBeginIndex()
+							&& CharSequences.isBlank(location, cpcaSeg.getProvinceNameIndex().getEndIndex(),
+									cpcaSeg.getCityNameIndex().getBeginIndex())) {
+						updateCpcaSeg(dict, cpcaSeg, cpcaAddressInfo);
+						ctx.address(cpcaSeg, AddressRule.SUBSTRING, location, endIndex);
 						return cpcaSeg;
 					} else {
 						cpcaSeg.reset();
-						cpcaSeg.setAddress(location);
+						ctx.address(cpcaSeg, AddressRule.WHOLE, location, 0);
 						return cpcaSeg;
 					}
 				}
-			} else {
-				cpcaSeg.reset();
-				cpcaSeg.setAddress(location);
+				int beginIdx = -1;
+				int endIdx = -1;
+				if (provMatched) {
+					beginIdx = cpcaSeg.getProvinceNameIndex().getBeginIndex();
+					endIdx = cpcaSeg.getProvinceNameIndex().getEndIndex();
+				} else if (cityMatched) {
+					beginIdx = cpcaSeg.getCityNameIndex().getBeginIndex();
+					endIdx = cpcaSeg.getCityNameIndex().getEndIndex();
+				}
+				if (beginIdx >= 0) {
+					boolean isUnit = isUnit(endIdx, location, ctx);
+					if (isUnit) {
+						// 如果是单位（如镇、村、大厦、中学等）
+						cpcaSeg.reset();
+						ctx.unitRejected = true;
+						ctx.address(cpcaSeg, AddressRule.WHOLE, location, 0);
+						return cpcaSeg;
+					}
+					if (beginIdx > 0) {
+						// 未匹配到省、市全称的，匹配到省或市，认为是地址
+						cpcaSeg.reset();
+						ctx.address(cpcaSeg, AddressRule.WHOLE, location, 0);
+						return cpcaSeg;
+					}
+					updateCpcaSeg(dict, cpcaSeg, cpcaAddressInfo);
+					ctx.address(cpcaSeg, AddressRule.SUBSTRING, location, endIndex);
+					return cpcaSeg;
+				} else {
+					cpcaSeg.reset();
+					ctx.address(cpcaSeg, AddressRule.WHOLE, location, 0);
+					return cpcaSeg;
+				}
 			}
-			return cpcaSeg;
-		} finally {
-			hits1.stream().forEach(k->{
-				k.value.removeFullName();
-			});
+		} else {
+			cpcaSeg.reset();
+			ctx.address(cpcaSeg, AddressRule.WHOLE, location, 0);
 		}
+		return cpcaSeg;
 	}
 
-	private boolean isUnit(int endIdx, String location) {
-		// 处理如xx镇
-		boolean isTown = isTown(endIdx, location);
-		if (isTown) {
-			return true;
-		}
-		boolean isRoad = isRoad(endIdx, location);
-		if (isRoad) {
-			return true;
-		}
-		// 处理如上海大厦
-		boolean isBuilding = isBuilding(endIdx, location);
-		if (isBuilding) {
-			return true;
-		}
-		// 处理如温州村
-		boolean isVillage = isVillage(endIdx, location);
-		if (isVillage) {
-			return true;
-		}
-		// 处理如杭州中学
-		boolean isSchool = isSchool(endIdx, location);
-		if (isSchool) {
-			return true;
+	/**
+	 * 省、市、区 可能会两次匹配到，比如杭州市xxxxxx这个地址，会先后匹配到杭州、杭州市，这里只取杭州市这次匹配。
+	 * 去重在 hits 内原地进行，保留下来的匹配依次移到 hits 前部
+	 * @param hits
+	 * @param acdat
+	 */
+	private void dedupHits(HitBuffer hits, CpcaTrie<MatchAddressInfo> acdat) {
+		int size = hits.size();
+		int kept = 0;
+		for (int i = 0; i < size; i++) {
+			List<AddressInfo> addressInfos = acdat.get(hits.value(i)).getAddressInfos();
+			boolean exists = false;//区域已经存在，过滤到重复匹配到的
+			for (int j = 0; j < kept; j++) {
+				if (acdat.get(hits.value(j)).getAddressInfos() == addressInfos) {
+					exists = true;
+					break;
+				}
+			}
+			if (exists) {
+				continue;
+			}
+			int from = i;
+			if (i < (size - 1) && acdat.get(hits.value(i + 1)).getAddressInfos() == addressInfos) {
+				from = i + 1;
+			} else if (i < (size - 2) && acdat.get(hits.value(i + 2)).getAddressInfos() == addressInfos) {
+				from = i + 2;
+			}
+			// 结果依赖到向后看过的匹配，后面不足两个匹配时，后续内容再出现同名匹配会改变结果
+			int dependEnd = hits.end(from == i + 1 ? i + 1 : Math.min(i + 2, size - 1));
+			hits.move(from, kept);
+			if (from != i) {
+				hits.setFullName(kept);
+			}
+			hits.setDependEnd(kept, dependEnd);
+			if (from == i && i + 2 >= size) {
+				hits.setOpenTail(kept);
+			}
+			kept++;
 		}
-		return false;
+		hits.truncate(kept);
 	}
 
-	private String substrLocation(String location, int end) {
-		int len = location.length();
-		return end >= len ? null : location.substring(end);
+	/**
+	 * 名称后面是否为单位（如 上海路、温州村、杭州中学），见 UnitSuffixRules
+	 */
+	private boolean isUnit(int endIdx, CharSequence location, MatchContext ctx) {
+		UnitSuffixRules rules = this.unitSuffixRules;
+		ctx.read(endIdx + rules.reach());
+		return rules.isUnit(location, endIdx);
 	}
 
-	private boolean isTown(int endIndex, String location) {
+	private boolean isArea(int endIndex, CharSequence location, MatchContext ctx) {
+		ctx.read(endIndex + 1);
 		int len = location.length();
 		if (len - endIndex >= 1) {
-			String str = location.substring(endIndex, endIndex + 1);
-			return (str.equals("镇") || str.equals("乡"));
+			char ch = location.charAt(endIndex);
+			return ch == '县' || ch == '区';
 		}
 		return false;
 	}
 
+	private void updateCpcaSeg(CpcaDictionary dict, CpcaSeg cpcaSeg, AddressInfo addressInfo) {
+		int cpcaCode = addressInfo.getCode();
+		cpcaSeg.setProvinceName(getName(dict.provinces[cpcaCode / Rank.RANK_PROVINCE.divisor]));
+		if (addressInfo.rank != Rank.RANK_PROVINCE) {
+			cpcaSeg.setCityName(getName(dict.cities[cpcaCode / Rank.RANK_CITY.divisor]));
+		}
+		if (addressInfo.rank == Rank.RANK_COUNTY) {
+			cpcaSeg.setAreaName(addressInfo.getName());
+		}
+		cpcaSeg.setCpcaCode(addressInfo.getCpcaCode());
+	}
+
+	private void updateCpcaSegIndex(MatchContext ctx, CpcaSeg cpcaSeg, Rank rank, int begin, int end) {
+		switch (rank) {
+		case RANK_PROVINCE:
+			cpcaSeg.setProvinceNameIndex(ctx.newIndex(0, begin, end));
+			break;
+		case RANK_CITY:
+			cpcaSeg.setCityNameIndex(ctx.newIndex(1, begin, end));
+			break;
+		case RANK_COUNTY:
+			cpcaSeg.setAreaNameIndex(ctx.newIndex(2, begin, end));
+			break;
+		default:
+			break;
+		}
+	}
+
+	private String getName(AddressInfo addressInfo) {
+		return addressInfo == null ? null : addressInfo.getName();
+	}
+
 	/**
-	 * 是否道路
-	 * 
-	 * @param endIndex
-	 * @param location
+	 * umap 中指定的编码转为 int，未指定时返回 -1，不是 6 位数字时返回 0（不会匹配到任何区县）
+	 * @param cpcaCode
 	 * @return
 	 */
-	private boolean isRoad(int endIndex, String location) {
-		int len = location.length();
-		if (len - endIndex >= 2) {
-			String str = location.substring(endIndex, endIndex + 2);
-			if (loadNameSuffixs_2.contains(str)) {
-				return true;
+	private static int parseCpcaCode(String cpcaCode) {
+		if (cpcaCode == null) {
+			return -1;
+		}
+		if (cpcaCode.length() != CPCA_CODE_COUNTY_SIZE) {
+			return 0;
+		}
+		int code = 0;
+		for (int i = 0; i < CPCA_CODE_COUNTY_SIZE; i++) {
+			char c = cpcaCode.charAt(i);
+			if (c < '0' || c > '9') {
+				return 0;
 			}
-			List<String> nums = Arrays.asList("一", "二", "三", "四", "五", "六", "七", "八", "九", "十");
-			for (String num : nums) {
-				for (String loadName : loadNameSuffixs_1) {
-					if (str.equals(num + loadName)) {
-						return true;
+			code = code * 10 + (c - '0');
+		}
+		return code;
+	}
+
+	/**
+	 * 按日期顺序读入各版本，文件中相同的行共用同一条记录，和上一个版本相同的匹配名共用上一个版本的 MatchAddressInfo；
+	 * 所有版本的匹配名合在一起构建一个自动机，各版本只保存自己的 value 数组
+	 * @param cpcaCvsFiles
+	 * @return
+	 * @throws IOException
+	 */
+	private CpcaHistory loadHistory(TreeMap<LocalDate, String> cpcaCvsFiles) throws IOException {
+		Map<String, AddressInfo> pool = new HashMap<>();
+		Map<String, byte[]> jsonBytes = new HashMap<>();
+		CpcaDictionary[] dicts = new CpcaDictionary[cpcaCvsFiles.size()];
+		List<TreeMap<String, MatchAddressInfo>> acMaps = new ArrayList<>();
+		TreeMap<String, MatchAddressInfo> names = new TreeMap<>();
+		int shared = 0;
+		for (Map.Entry<LocalDate, String> entry : cpcaCvsFiles.entrySet()) {
+			CpcaDictionary dict = new CpcaDictionary(entry.getValue(), entry.getKey(), jsonBytes);
+			TreeMap<String, MatchAddressInfo> acMap = dict.readCpca(pool);
+			if (!acMaps.isEmpty()) {
+				TreeMap<String, MatchAddressInfo> previous = acMaps.get(acMaps.size() - 1);
+				for (Map.Entry<String, MatchAddressInfo> match : acMap.entrySet()) {
+					MatchAddressInfo old = previous.get(match.getKey());
+					// 记录相同（共用的记录按引用比较）
+					if (old != null && old.getAddressInfos().equals(match.getValue().getAddressInfos())) {
+						match.setValue(old);
+						shared++;
 					}
 				}
 			}
+			dict.compileAddressInfos(acMap);
+			for (Map.Entry<String, MatchAddressInfo> match : acMap.entrySet()) {
+				names.putIfAbsent(match.getKey(), match.getValue());
+			}
+			dicts[acMaps.size()] = dict;
+			acMaps.add(acMap);
 		}
-		if (len - endIndex >= 1) {
-			String str = location.substring(endIndex, endIndex + 1);
-			return (loadNameSuffixs_1.contains(str));
+		CpcaTrie<MatchAddressInfo> trie = new CpcaTrie<>();
+		trie.build(names);
+		for (int i = 0; i < dicts.length; i++) {
+			MatchAddressInfo[] values = new MatchAddressInfo[names.size()];
+			for (MatchAddressInfo matchAddressInfo : acMaps.get(i).values()) {
+				// 下标改为在所有版本的匹配名中的顺序，共用的 MatchAddressInfo 在各版本中下标相同
+				int index = trie.exactMatchSearch(matchAddressInfo.getMatchName());
+				matchAddressInfo.setIndex(index);
+				values[index] = matchAddressInfo;
+			}
+			dicts[i].acdat = trie.withValues(values);
 		}
-		return false;
+		logger.info("cpca历史字典导入完成，共 {} 个版本、{} 条不同的记录、{} 个匹配名，其中 {} 个和上一版本共用", dicts.length,
+				pool.size(), names.size(), shared);
+		return new CpcaHistory(dicts);
 	}
 
-	private boolean isBuilding(int endIndex, String location) {
-		int len = location.length();
-		if (len - endIndex >= 2) {
-			String str = location.substring(endIndex, endIndex + 2);
-			if (str.equals("大厦")) {
-				return true;
+	/**
+	 * 加载字典，优先加载快照
+	 * @param cpcaCvsFile
+	 * @param snapshotFile 可为 null，加载失败（不存在、版本不一致、校验失败）时改为加载 cpcaCvsFile
+	 * @param version
+	 * @return
+	 * @throws IOException
+	 */
+	private CpcaDictionary loadDictionary(String cpcaCvsFile, String snapshotFile, int version) throws IOException {
+		if (snapshotFile != null) {
+			try {
+				CpcaDictionary dict = new CpcaDictionary(version, snapshotFile);
+				dict.loadSnapshot();
+				return dict;
+			} catch (IOException | RuntimeException e) {
+				if (cpcaCvsFile == null || cpcaCvsFile.equals("")) {
+					throw e instanceof IOException ? (IOException) e : new IOException(e);
+				}
+				logger.warn("cpca快照 {} 导入失败，改为导入 {}: {}", snapshotFile, cpcaCvsFile, e.getMessage());
 			}
 		}
-		return false;
+		CpcaDictionary dict = new CpcaDictionary(version, cpcaCvsFile);
+		dict.loadCpca();
+		return dict;
 	}
 
-	private boolean isVillage(int endIndex, String location) {
-		int len = location.length();
-		if (len - endIndex >= 1) {
-			String str = location.substring(endIndex, endIndex + 1);
-			return (villageNameSuffixs_1.contains(str));
-		}
-		return false;
+	/**
+	 * 生成当前字典的快照文件，见 CpcaSnapshot
+	 * @param snapshotFile
+	 * @throws IOException
+	 */
+	public void writeSnapshot(Path snapshotFile) throws IOException {
+		CpcaDictionary dict = dictionary;
+		CpcaSnapshot.write(dict.addressInfos, dict.acdat, snapshotFile);
 	}
 
-	private boolean isSchool(int endIndex, String location) {
-		int len = location.length();
-		if (len - endIndex >= 2) {
-			String str = location.substring(endIndex, Math.min(endIndex + 6, len));
-			return str.contains("幼儿园") || str.contains("小学") || str.contains("中学") || str.contains("学院")
-					|| str.contains("大学");
+	private String resolveFileName(String file) throws IOException {
+		if (file == null || file.equals("")) {
+			throw new IOException("input file is null");
 		}
-		return false;
+		if (new File(file).isFile()) {
+			return file;
+		}
+		URL url = CpcaExtractorImpl.class.getResource("/META-INF/" + file);
+		if (url == null) {
+			url = CpcaExtractorImpl.class.getResource("/eet/evar/" + file);
+		}
+		if (url == null) {
+			url = CpcaExtractorImpl.class.getResource('/' + file);
+		}
+		if (url == null) {
+			throw new IOException("File not found: " + file);
+		}
+		return URLDecoder.decode(url.getFile(), "UTF-8");
 	}
 
-	private boolean isArea(int endIndex, String location) {
-		int len = location.length();
-		if (len - endIndex >= 1) {
-			String str = location.substring(endIndex, endIndex + 1);
-			return (str.equals("县") || str.equals("区"));
-		}
-		return false;
+	private String simplifyName(String name) {
+		return this.zzqSimplify.getOrDefault(name, this.stopKey.matcher(name).replaceFirst(""));
 	}
 
-	private void updateCpcaSeg(CpcaSeg cpcaSeg, String cpcaCode) {
-		if (cpcaCode.endsWith("0000")) {
-			cpcaSeg.setProvinceName(getCpcaName(cpcaCode.substring(0, CPCA_CODE_PROV_SIZE)));
-			return;
+	/**
+	 * 结果缓存的 key，umap 按引用比较，调用方应复用同一个 umap 对象
+	 */
+	static final class ResultKey {
+		private final String location;
+		private final Map<String, String> umap;
+		private final boolean strictlyMatch;
+		private final int hash;
+
+		ResultKey(String location, Map<String, String> umap, boolean strictlyMatch) {
+			this.location = location;
+			this.umap = umap;
+			this.strictlyMatch = strictlyMatch;
+			this.hash = (location.hashCode() * 31 + System.identityHashCode(umap)) * 31 + (strictlyMatch ? 1 : 0);
 		}
-		if (cpcaCode.endsWith("00")) {
-			cpcaSeg.setProvinceName(getCpcaName(cpcaCode.substring(0, CPCA_CODE_PROV_SIZE)));
-			cpcaSeg.setCityName(getCpcaName(cpcaCode.substring(0, CPCA_CODE_CITY_SIZE)));
-			return;
+
+		@Override
+		public int hashCode() {
+			return hash;
 		}
-		cpcaSeg.setProvinceName(getCpcaName(cpcaCode.substring(0, CPCA_CODE_PROV_SIZE)));
-		cpcaSeg.setCityName(getCpcaName(cpcaCode.substring(0, CPCA_CODE_CITY_SIZE)));
-		cpcaSeg.setAreaName(getCpcaName(cpcaCode));
-	}
 
-	private void updateCpcaSegIndex(CpcaSeg cpcaSeg, Rank rank, int begin, int end) {
-		switch (rank) {
-		case RANK_PROVINCE:
-			cpcaSeg.setProvinceNameIndex(new CpcaIndex(begin, end));
-			break;
-		case RANK_CITY:
-			cpcaSeg.setCityNameIndex(new CpcaIndex(begin, end));
-			break;
-		case RANK_COUNTY:
-			cpcaSeg.setAreaNameIndex(new CpcaIndex(begin, end));
-			break;
-		default:
-			break;
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof ResultKey)) {
+				return false;
+			}
+			ResultKey other = (ResultKey) obj;
+			return hash == other.hash && strictlyMatch == other.strictlyMatch && umap == other.umap
+					&& location.equals(other.location);
 		}
 	}
 
-	private String getCpcaName(String partyCpcaCode) {
-		String cpcaCode = partyCpcaCode + String.format("%0" + (CPCA_CODE_SIZE - partyCpcaCode.length()) + "d", 0);
-		AddressInfo addressInfo = addressInfoMap.get(cpcaCode);
-		return addressInfo == null ? null : addressInfo.getName();
-	}
+	/**
+	 * 一个版本的字典，加载完成后不再修改，reload 时整体替换
+	 */
+	class CpcaDictionary {
+		final int version;
+		/**
+		 * 文件格式： adcode,name,longitude,latitude 500233000000,忠县,108.039002,30.299559
+		 * 410506000000,龙安区,114.301331,36.076225 . . .
+		 * 441700000000,阳江市,111.982589,21.857887
+		 * 或者 CpcaSnapshot 生成的快照文件
+		 */
+		final String source;
+		// 按编码直接定位省、市：provinces[编码 / 10000]、cities[编码 / 100]
+		final AddressInfo[] provinces = new AddressInfo[100];
+		final AddressInfo[] cities = new AddressInfo[10000];
+		// 按文件顺序保存的所有记录，生成快照时使用
+		final List<AddressInfo> addressInfos = new ArrayList<>();
+		// 历史字典共用所有版本名称的并集构建的自动机，见 CpcaHistory
+		CpcaTrie<MatchAddressInfo> acdat = new CpcaTrie<>();
+		// 自动机中最长的匹配名长度
+		private int maxNameLength;
+		// 名称、编码对应的 JSON 字符串（UTF-8，含引号），见 CpcaJsonEncoder
+		final Map<String, byte[]> jsonBytes;
+		// 按编码查找记录，编码重复时取第一条，CompactCpcaSeg 按编码取名称时使用
+		private final Map<Integer, AddressInfo> codes = new HashMap<>();
+		// 按经纬度查找区县，加载完成后生成
+		CpcaLocator locator;
+		// 模糊匹配用的名称索引，第一次模糊匹配时生成
+		private volatile CpcaFuzzyIndex fuzzyIndex;
+		// 历史字典的生效日期，当前字典为 null
+		final LocalDate since;
 
-	private void loadCpca() throws IOException {
-		String fileName;
-		if (cpcaCvsFile == null || cpcaCvsFile.equals("")) {
-			throw new IOException("input file is null");
-		} else {
-			if (new File(cpcaCvsFile).isFile()) {
-				fileName = cpcaCvsFile;
+		CpcaDictionary(int version, String source) {
+			this.version = version;
+			this.source = source;
+			this.since = null;
+			this.jsonBytes = new HashMap<>();
+		}
+
+		/**
+		 * 历史字典，版本为 0
+		 * @param source
+		 * @param since 生效日期
+		 * @param jsonBytes 各版本共用
+		 */
+		CpcaDictionary(String source, LocalDate since, Map<String, byte[]> jsonBytes) {
+			this.version = 0;
+			this.source = source;
+			this.since = since;
+			this.jsonBytes = jsonBytes;
+		}
+
+		private void loadCpca() throws IOException {
+			TreeMap<String, MatchAddressInfo> acMap = readCpca(null);
+			compileAddressInfos(acMap);
+			acdat.build(acMap);
+			locator = new CpcaLocator(addressInfos);
+			logger.info("cpca字典导入完成，共  {} 条记录", addressInfos.size());
+		}
+
+		/**
+		 * 读入 cpca 文件中的所有记录
+		 * @param pool 按行共用的记录，多个版本的字典中相同的行使用同一个 AddressInfo；为 null 时不共用
+		 * @return 匹配名及对应的记录，尚未 compile
+		 * @throws IOException
+		 */
+		private TreeMap<String, MatchAddressInfo> readCpca(Map<String, AddressInfo> pool) throws IOException {
+			String fileName = resolveFileName(source);
+			InputStream in = null;
+			if (fileName.contains("BOOT-INF/classes")) {
+				in = CpcaExtractorImpl.class.getResourceAsStream("/" + source);
 			} else {
-				URL url = CpcaExtractorImpl.class.getResource("/META-INF/" + cpcaCvsFile);
-				if (url == null) {
-					url = CpcaExtractorImpl.class.getResource("/eet/evar/" + cpcaCvsFile);
+				in = new FileInputStream(new File(fileName));
+			}
+			TreeMap<String, MatchAddressInfo> acMap = new TreeMap<>();
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+				String line = reader.readLine();
+				// 第一行 adcode,name,longitude,latitude 跳过处理
+				line = reader.readLine();
+				while (line != null) {
+					AddressInfo addressInfo = pool == null ? null : pool.get(line);
+					if (addressInfo == null) {
+						addressInfo = parseAddressInfo(line);
+						if (pool != null) {
+							pool.put(line, addressInfo);
+						}
+					}
+					addAddressInfo(acMap, addressInfo);
+					line = reader.readLine();
 				}
-				if (url == null) {
-					url = CpcaExtractorImpl.class.getResource('/' + cpcaCvsFile);
+			}
+			return acMap;
+		}
+
+		private AddressInfo parseAddressInfo(String line) {
+			int nameBegin = line.indexOf(',') + 1;
+			int nameEnd = line.indexOf(',', nameBegin);
+			String name = nameEnd < 0 ? line.substring(nameBegin) : line.substring(nameBegin, nameEnd);
+			String cpcaCode = line.substring(0, nameBegin - 1);
+			double longitude = Double.NaN;
+			double latitude = Double.NaN;
+			int lonEnd = nameEnd < 0 ? -1 : line.indexOf(',', nameEnd + 1);
+			if (lonEnd > nameEnd + 1 && lonEnd < line.length() - 1) {
+				longitude = Double.parseDouble(line.substring(nameEnd + 1, lonEnd));
+				latitude = Double.parseDouble(line.substring(lonEnd + 1).trim());
+			}
+			return new AddressInfo(name, cpcaCode, longitude, latitude);
+		}
+
+		/**
+		 * 加载快照文件，文件在磁盘上时内存映射读取
+		 * @throws IOException 文件不存在、版本不一致、校验失败
+		 */
+		private void loadSnapshot() throws IOException {
+			String fileName = resolveFileName(source);
+			ByteBuffer data;
+			if (new File(fileName).isFile()) {
+				data = CpcaSnapshot.map(new File(fileName).toPath());
+			} else {
+				try (InputStream in = CpcaExtractorImpl.class.getResourceAsStream("/" + source)) {
+					if (in == null) {
+						throw new IOException("File not found: " + source);
+					}
+					data = CpcaSnapshot.read(in);
 				}
-				if (url == null) {
-					throw new IOException("File not found: " + cpcaCvsFile);
-				} else {
-					fileName = URLDecoder.decode(url.getFile(), "UTF-8");
+			}
+			TreeMap<String, MatchAddressInfo> acMap = new TreeMap<>();
+			int count = data.getInt();
+			for (int i = 0; i < count; i++) {
+				int code = data.getInt();
+				double longitude = data.getDouble();
+				double latitude = data.getDouble();
+				addAddressInfo(acMap,
+						new AddressInfo(CpcaSnapshot.readName(data), Integer.toString(code), longitude, latitude));
+			}
+			compileAddressInfos(acMap);
+			locator = new CpcaLocator(addressInfos);
+			MatchAddressInfo[] values = acMap.values().toArray(new MatchAddressInfo[acMap.size()]);
+			acdat.readFrom(data, values);
+			// 匹配名的生成规则变化后，快照中的自动机和字典对不上
+			for (MatchAddressInfo matchAddressInfo : values) {
+				if (acdat.exactMatchSearch(matchAddressInfo.getMatchName()) != matchAddressInfo.getIndex()) {
+					throw new IOException("快照中的自动机和字典不一致");
 				}
 			}
+			logger.info("cpca快照 {} 导入完成，共  {} 条记录", source, addressInfos.size());
 		}
-		InputStream in = null;
-		if (fileName.contains("BOOT-INF/classes")) {
-			in = CpcaExtractorImpl.class.getResourceAsStream("/" + cpcaCvsFile);
-		} else {
-			in = new FileInputStream(new File(fileName));
-		}
-		TreeMap<String, MatchAddressInfo> acMap = new TreeMap<>();
-		BufferedReader reader = new BufferedReader(new InputStreamReader(in));
-		String line = reader.readLine();
-		// 第一行 adcode,name,longitude,latitude 跳过处理
-		line = reader.readLine();
-		while (line != null) {
-			String[] fields = split(line, ",");
-			String name = fields[1];
-			String cpcaCode = fields[0];
-			AddressInfo addressInfo = new AddressInfo(name, cpcaCode);
-			addressInfoMap.put(cpcaCode, addressInfo);
+
+		private void addAddressInfo(TreeMap<String, MatchAddressInfo> acMap, AddressInfo addressInfo) {
+			String name = addressInfo.getName();
+			addressInfos.add(addressInfo);
+			codes.putIfAbsent(addressInfo.getCode(), addressInfo);
+			if (addressInfo.rank == Rank.RANK_PROVINCE) {
+				provinces[addressInfo.getCode() / Rank.RANK_PROVINCE.divisor] = addressInfo;
+			} else if (addressInfo.rank == Rank.RANK_CITY) {
+				cities[addressInfo.getCode() / Rank.RANK_CITY.divisor] = addressInfo;
+			}
 			MatchAddressInfo matchAddressInfo = acMap.get(name);
 			if (matchAddressInfo != null) {
 				matchAddressInfo.addAddressInfo(addressInfo);
 			} else {
 				List<AddressInfo> addressInfos = new ArrayList<>(Arrays.asList(addressInfo));
 				acMap.put(name, new MatchAddressInfo(name, addressInfos));
-				String simplifyName = simplifyName(name);
+				String simplifyName = addressInfo.getSimplifyName();
 				if (!simplifyName.equals(name)) {
 					acMap.put(simplifyName, new MatchAddressInfo(simplifyName, addressInfos));
 				}
 			}
-			line = reader.readLine();
 		}
-		reader.close();
-		acdat.build(acMap);
-		logger.info("cpca字典导入完成，共  {} 条记录", addressInfoMap.size());
+
+		/**
+		 * 所有记录加入 acMap 后调用
+		 * @param acMap
+		 */
+		private void compileAddressInfos(TreeMap<String, MatchAddressInfo> acMap) {
+			// 自动机中 value 的下标即 acMap 的遍历顺序
+			int index = 0;
+			Map<List<AddressInfo>, List<String>> aliases = new IdentityHashMap<>();
+			for (MatchAddressInfo matchAddressInfo : acMap.values()) {
+				matchAddressInfo.setIndex(index++);
+				matchAddressInfo.compile();
+				aliases.computeIfAbsent(matchAddressInfo.getAddressInfos(), k -> new ArrayList<>())
+						.add(matchAddressInfo.getMatchName());
+				maxNameLength = Math.max(maxNameLength, matchAddressInfo.getMatchName().length());
+			}
+			for (MatchAddressInfo matchAddressInfo : acMap.values()) {
+				List<String> names = aliases.get(matchAddressInfo.getAddressInfos());
+				matchAddressInfo.setAliases(names.toArray(new String[names.size()]));
+			}
+			for (AddressInfo addressInfo : addressInfos) {
+				jsonBytes.computeIfAbsent(addressInfo.getName(), CpcaJsonEncoder::quote);
+				jsonBytes.computeIfAbsent(addressInfo.getCpcaCode(), CpcaJsonEncoder::quote);
+			}
+		}
+
+		CpcaFuzzyIndex fuzzyIndex() {
+			CpcaFuzzyIndex index = fuzzyIndex;
+			if (index == null) {
+				List<String> names = new ArrayList<>();
+				for (AddressInfo addressInfo : addressInfos) {
+					names.add(addressInfo.getName());
+					names.add(addressInfo.getSimplifyName());
+				}
+				// 多个线程同时生成时结果相同，保留任意一个即可
+				index = new CpcaFuzzyIndex(names);
+				fuzzyIndex = index;
+			}
+			return index;
+		}
+
+		/**
+		 * 6 位编码对应的记录，没有时返回 null
+		 * @param code
+		 * @return
+		 */
+		AddressInfo addressInfo(int code) {
+			return codes.get(code);
+		}
+
+		/**
+		 * location 中是否有结束位置在 from 之后的匹配
+		 * @param location
+		 * @param from
+		 * @return
+		 */
+		boolean hasMatchAfter(CharSequence location, int from) {
+			int begin = Math.max(0, from + 1 - maxNameLength);
+			boolean[] found = new boolean[1];
+			acdat.parseText(location.subSequence(begin, location.length()), (hitBegin, hitEnd, value) -> {
+				if (value != null && begin + hitEnd > from) {
+					found[0] = true;
+				}
+			});
+			return found[0];
+		}
 	}
 
-	private String simplifyName(String name) {
-		return this.zzqSimplify.getOrDefault(name, this.stopKey.matcher(name).replaceFirst(""));
+	/**
+	 * 按 chunk 大小二分切分 locations，每个叶子任务复用一个 MatchContext
+	 */
+	class TransformTask<T> extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final CpcaDictionary dict;
+		private final String[] locations;
+		private final Map<String, String> umap;
+		private final boolean strictlyMatch;
+		private final T[] results;
+		private final BiFunction<CpcaDictionary, CpcaSeg, ? extends T> finisher;
+		private final int from;
+		private final int to;
+		private final int chunk;
+
+		TransformTask(CpcaDictionary dict, String[] locations, Map<String, String> umap, boolean strictlyMatch,
+				T[] results, BiFunction<CpcaDictionary, CpcaSeg, ? extends T> finisher, int from, int to, int chunk) {
+			this.dict = dict;
+			this.locations = locations;
+			this.umap = umap;
+			this.strictlyMatch = strictlyMatch;
+			this.results = results;
+			this.finisher = finisher;
+			this.from = from;
+			this.to = to;
+			this.chunk = chunk;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= chunk) {
+				MatchContext ctx = new MatchContext();
+				for (int i = from; i < to; i++) {
+					results[i] = finisher.apply(dict, transform(dict, locations[i], umap, strictlyMatch, ctx));
+				}
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new TransformTask<>(dict, locations, umap, strictlyMatch, results, finisher, from, mid, chunk),
+					new TransformTask<>(dict, locations, umap, strictlyMatch, results, finisher, mid, to, chunk));
+		}
 	}
 
 	class MatchAddressInfo {
+		private int index;// 在自动机中的下标
 		private String matchName;
 		private List<AddressInfo> addressInfos;
-		private ThreadLocal<Boolean> isFullName = new ThreadLocal<>();
+		// 以下由 compile 根据 addressInfos 生成，匹配时只用这些
+		private AddressInfo[] candidates;
+		private int rankMask;// 包含的 Rank，按位表示
+		private String[] aliases;// 共用同一个 addressInfos 的所有匹配名（含自身），如 杭州、杭州市
 
 		public MatchAddressInfo(String matchName, List<AddressInfo> addressInfos) {
 			this.matchName = matchName;
 			this.addressInfos = addressInfos;
 		}
 
-		public AddressInfo matchAddressInfo(AddressInfo parentAddressInfo, String firstCpca) {
+		public AddressInfo matchAddressInfo(AddressInfo parentAddressInfo, int firstCpca) {
 			return matchAddressInfo(parentAddressInfo, firstCpca, false);
 		}
 
-		public AddressInfo matchAddressInfo(AddressInfo parentAddressInfo, String firstCpca, boolean strictlyMatch) {
+		/**
+		 * 
+		 * @param parentAddressInfo 已匹配到的上级
+		 * @param firstCpca umap 中指定的编码，未指定时为 -1
+		 * @param strictlyMatch
+		 * @return
+		 */
+		public AddressInfo matchAddressInfo(AddressInfo parentAddressInfo, int firstCpca, boolean strictlyMatch) {
 			if (parentAddressInfo != null) {
-				AddressInfo addressInfo = this.addressInfos.stream().filter(p -> p.belongTo(parentAddressInfo))
-						.findFirst().orElse(null);
-				if (addressInfo != null) {
-					return addressInfo;
+				for (int i = 0; i < candidates.length; i++) {
+					if (candidates[i].belongTo(parentAddressInfo)) {
+						return candidates[i];
+					}
 				}
 				// 存在市、县简称相同的情况，会先匹配到市，实际应该匹配到县
 				if (parentAddressInfo.rank == Rank.RANK_CITY
-						&& this.matchName.startsWith(simplifyName(parentAddressInfo.getName()))) {
+						&& this.matchName.startsWith(parentAddressInfo.getSimplifyName())) {
 					return matchAddressInfo(null, firstCpca, strictlyMatch);
 				}
 				return null;
-			} else if (firstCpca != null) {
-				return this.addressInfos.stream().filter(p -> p.getCpcaCode().equals(firstCpca)).findFirst()
-						.orElse(null);
+			} else if (firstCpca >= 0) {
+				for (int i = 0; i < candidates.length; i++) {
+					if (candidates[i].getCode() == firstCpca) {
+						return candidates[i];
+					}
+				}
+				return null;
+			} else if (strictlyMatch) {
+				// 同名的只有一个，或者同名的不是同一级别（如 吉林省、吉林市）时取第一个，否则当作未匹配
+				return candidates.length == 1 || Integer.bitCount(rankMask) > 1 ? candidates[0] : null;
 			} else {
-				return strictlyMatch ? (addressInfos.size() == 1 ? addressInfos.get(0)
-						: (addressInfos.stream().map(AddressInfo::getRank).distinct().count() > 1 ? addressInfos.get(0)
-								: null))
-						: addressInfos.get(0);
+				return candidates[0];
+			}
+		}
+
+		/**
+		 * addressInfos 加载完成后调用，生成匹配时用的数组和 Rank 位图
+		 */
+		public void compile() {
+			this.candidates = this.addressInfos.toArray(new AddressInfo[this.addressInfos.size()]);
+			int mask = 0;
+			for (AddressInfo addressInfo : candidates) {
+				mask |= addressInfo.rank.mask();
 			}
+			this.rankMask = mask;
+		}
+
+		/**
+		 * 同名的有多个且是同一级别（如多个朝阳区），严格匹配且没有上级、umap 时无法确定
+		 */
+		public boolean isAmbiguous() {
+			return candidates.length > 1 && Integer.bitCount(rankMask) == 1;
+		}
+
+		public boolean hasRank(Rank rank) {
+			return (rankMask & rank.mask()) != 0;
+		}
+
+		public Rank getFirstRank() {
+			return candidates[0].rank;
 		}
 
 		public void addAddressInfo(AddressInfo addressInfo) {
@@ -626,6 +1768,22 @@ public class CpcaExtractorImpl implements CpcaExtractor {
 			}
 		}
 
+		public int getIndex() {
+			return index;
+		}
+
+		public String[] getAliases() {
+			return aliases;
+		}
+
+		public void setAliases(String[] aliases) {
+			this.aliases = aliases;
+		}
+
+		public void setIndex(int index) {
+			this.index = index;
+		}
+
 		public String getMatchName() {
 			return matchName;
 		}
@@ -641,35 +1799,23 @@ public class CpcaExtractorImpl implements CpcaExtractor {
 		public void setAddressInfos(List<AddressInfo> addressInfos) {
 			this.addressInfos = addressInfos;
 		}
-
-		public boolean isFullName() {
-			return isFullName.get() == null ? false : isFullName.get();
-		}
-
-		public void setFullName(boolean isFullName) {
-			this.isFullName.set(isFullName);
-		}
-		
-		public void removeFullName() {
-			this.isFullName.remove();
-		}
 	}
 
 	class CpcaCode {
-		private String cpcaCode;
+		private int cpcaCode;
 		private Rank rank;
 
 		public CpcaCode(String cpcaCode) {
-			this.cpcaCode = cpcaCode.substring(0, CPCA_CODE_COUNTY_SIZE);// 前6位代表省、市、县
-			rank = this.cpcaCode.endsWith("0000") ? Rank.RANK_PROVINCE
-					: (this.cpcaCode.endsWith("00") ? Rank.RANK_CITY : Rank.RANK_COUNTY);
+			this.cpcaCode = Integer.parseInt(cpcaCode.substring(0, CPCA_CODE_COUNTY_SIZE));// 前6位代表省、市、县
+			rank = this.cpcaCode % Rank.RANK_PROVINCE.divisor == 0 ? Rank.RANK_PROVINCE
+					: (this.cpcaCode % Rank.RANK_CITY.divisor == 0 ? Rank.RANK_CITY : Rank.RANK_COUNTY);
 		}
 
-		public String getCpcaCode() {
+		public int getCpcaCode() {
 			return cpcaCode;
 		}
 
-		public void setCpcaCode(String cpcaCode) {
+		public void setCpcaCode(int cpcaCode) {
 			this.cpcaCode = cpcaCode;
 		}
 
@@ -684,19 +1830,32 @@ public class CpcaExtractorImpl implements CpcaExtractor {
 
 	class AddressInfo {
 		private String name;
-		private String cpcaCode;
+		private String simplifyName;
+		private int code;
+		private String cpcaCode;// 6位编码的字符串形式，和 code 一致
 		private Rank rank;
+		// 经纬度，文件中没有时为 NaN
+		private double longitude = Double.NaN;
+		private double latitude = Double.NaN;
 
 		public AddressInfo(String name, String cpcaCode) {
 			this.name = name;
+			this.simplifyName = simplifyName(name);
 			CpcaCode cpcaCodeObj = new CpcaCode(cpcaCode);
-			this.cpcaCode = cpcaCodeObj.getCpcaCode();
+			this.code = cpcaCodeObj.getCpcaCode();
+			this.cpcaCode = cpcaCode.substring(0, CPCA_CODE_COUNTY_SIZE);
 			rank = cpcaCodeObj.getRank();
 		}
 
+		public AddressInfo(String name, String cpcaCode, double longitude, double latitude) {
+			this(name, cpcaCode);
+			this.longitude = longitude;
+			this.latitude = latitude;
+		}
+
 		public boolean belongTo(AddressInfo other) {
-			// cpca 编码 省、市、县 长度各为 2、4、6
-			return this.cpcaCode.startsWith(other.cpcaCode.substring(0, (other.rank.value + 1) * 2));
+			// cpca 编码 省、市、县 分别为前 2、4、6 位相同
+			return this.code / other.rank.divisor == other.code / other.rank.divisor;
 		}
 
 		public String getName() {
@@ -707,34 +1866,60 @@ public class CpcaExtractorImpl implements CpcaExtractor {
 			this.name = name;
 		}
 
-		public String getCpcaCode() {
-			return cpcaCode;
+		public String getSimplifyName() {
+			return simplifyName;
 		}
 
-		public void setCpcaCode(String cpcaCode) {
-			this.cpcaCode = cpcaCode;
+		public int getCode() {
+			return code;
+		}
+
+		public String getCpcaCode() {
+			return cpcaCode;
 		}
 
 		public Rank getRank() {
 			return rank;
 		}
+
+		public double getLongitude() {
+			return longitude;
+		}
+
+		public double getLatitude() {
+			return latitude;
+		}
+
+		public boolean hasLocation() {
+			return !Double.isNaN(longitude) && !Double.isNaN(latitude);
+		}
 	}
 
 	enum Rank {
-		RANK_PROVINCE(CPCA_CODE_PROV_SIZE / 2 - 1, "省"), // 0
-		RANK_CITY(CPCA_CODE_CITY_SIZE / 2 - 1, "市"), // 1
-		RANK_COUNTY(CPCA_CODE_COUNTY_SIZE / 2 - 1, "县");// 2
+		RANK_PROVINCE(CPCA_CODE_PROV_SIZE / 2 - 1, "省", 10000), // 0
+		RANK_CITY(CPCA_CODE_CITY_SIZE / 2 - 1, "市", 100), // 1
+		RANK_COUNTY(CPCA_CODE_COUNTY_SIZE / 2 - 1, "县", 1);// 2
 
 		private int value;
 		private String name;
+		private int divisor;// 6位编码除以 divisor 得到该级别的编码前缀
 
 		public String getName() {
 			return name;
 		}
 
-		Rank(int value, String name) {
+		int mask() {
+			return 1 << value;
+		}
+
+		int divisor() {
+			return divisor;
+		}
+
+		Rank(int value, String name, int divisor) {
 			this.value = value;
 			this.name = name;
+			this.divisor = divisor;
 		}
 	}
 	
@@ -757,56 +1942,6 @@ public class CpcaExtractorImpl implements CpcaExtractor {
 		return null;
 	}
 	
-	private String[] split(String source, String div) {
-		if (source == null || div == null) {
-			return null;
-		}
-		int arynum = 0, intIdx = 0, intIdex = 0, div_length = div.length();
-		if (source.compareTo("") != 0) {
-			if (source.indexOf(div) != -1) {
-				intIdx = source.indexOf(div);
-				for (int intCount = 1;; intCount++) {
-					if (source.indexOf(div, intIdx + div_length) != -1) {
-						intIdx = source.indexOf(div, intIdx + div_length);
-						arynum = intCount;
-					} else {
-						arynum += 2;
-						break;
-					}
-				}
-			} else
-				arynum = 1;
-		} else
-			arynum = 0;
-
-		intIdx = 0;
-		intIdex = 0;
-		String[] returnStr = new String[arynum];
-
-		if (source.compareTo("") != 0) {
-			if (source.indexOf(div) != -1) {
-				intIdx = (int) source.indexOf(div);
-				returnStr[0] = (String) source.substring(0, intIdx);
-				for (int intCount = 1;; intCount++) {
-					if (source.indexOf(div, intIdx + div_length) != -1) {
-						intIdex = (int) source.indexOf(div, intIdx + div_length);
-						returnStr[intCount] = (String) source.substring(intIdx + div_length, intIdex);
-						intIdx = (int) source.indexOf(div, intIdx + div_length);
-					} else {
-						returnStr[intCount] = (String) source.substring(intIdx + div_length, source.length());
-						break;
-					}
-				}
-			} else {
-				returnStr[0] = (String) source.substring(0, source.length());
-				return returnStr;
-			}
-		} else {
-			return returnStr;
-		}
-		return returnStr;
-	}
-
 	public static void main(String[] args) {
 		CpcaExtractorImpl cpcaExtractor = new CpcaExtractorImpl("adcodes.csv");
 		CpcaSeg cpcaSeg = cpcaExtractor.transform("浙江省杭州市拱墅区祥园路300号");
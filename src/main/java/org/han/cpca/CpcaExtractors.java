@@ -1,5 +1,11 @@
 package org.han.cpca;
 
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+
 import com.google.common.base.Preconditions;
 
 public final class CpcaExtractors {
@@ -11,13 +17,162 @@ public final class CpcaExtractors {
 	
 	public static class Builder {
 		private String cpcaCvsFile;
+		private String snapshotFile;
+		private CpcaExecution execution;
+		private long resultCacheSize;
+		private long prefixCacheSize;
+		private CpcaMetrics metrics;
+		private UnitSuffixRules unitSuffixRules;
+		private String townFile;
+		private boolean fuzzyMatch;
+		private CpcaNormalizer normalizer;
+		private final Map<LocalDate, String> history = new TreeMap<>();
 		public Builder withCpcaCvsFile(String file) {
 			this.cpcaCvsFile = file;
 			return this;
 		}
+		/**
+		 * CpcaSnapshot 生成的快照文件，优先加载快照，加载失败时加载 cpcaCvsFile
+		 * @param file
+		 * @return
+		 */
+		public Builder withSnapshotFile(String file) {
+			this.snapshotFile = file;
+			return this;
+		}
+		/**
+		 * transformAll 使用的线程池，默认 ForkJoinPool.commonPool()，同 withExecution(CpcaExecution.forkJoinPool(forkJoinPool))
+		 * @param forkJoinPool
+		 * @return
+		 */
+		public Builder withForkJoinPool(ForkJoinPool forkJoinPool) {
+			return withExecution(CpcaExecution.forkJoinPool(forkJoinPool));
+		}
+		/**
+		 * transformAll、transformAsync 的执行方式，见 CpcaExecution，默认 CpcaExecution.commonPool()
+		 * @param execution
+		 * @return
+		 */
+		public Builder withExecution(CpcaExecution execution) {
+			this.execution = Preconditions.checkNotNull(execution, "execution不能为空");
+			return this;
+		}
+		/**
+		 * 开启结果缓存，相同地址重复出现较多时使用，缓存命中时返回的 CpcaSeg 是只读的
+		 * @param maximumSize 最多缓存的结果数
+		 * @return
+		 */
+		public Builder withResultCache(long maximumSize) {
+			Preconditions.checkArgument(maximumSize > 0, "maximumSize必须大于0");
+			this.resultCacheSize = maximumSize;
+			return this;
+		}
+		/**
+		 * 开启前缀缓存，开头的省、市、区部分相同的地址共用缓存结果，地址后半部分各不相同时比结果缓存命中率高
+		 * @param maximumSize 最多缓存的前缀数
+		 * @return
+		 */
+		public Builder withPrefixCache(long maximumSize) {
+			Preconditions.checkArgument(maximumSize > 0, "maximumSize必须大于0");
+			this.prefixCacheSize = maximumSize;
+			return this;
+		}
+		/**
+		 * 开启 transform 统计，见 CpcaMetrics
+		 * @param metrics
+		 * @return
+		 */
+		public Builder withMetrics(CpcaMetrics metrics) {
+			this.metrics = Preconditions.checkNotNull(metrics, "metrics不能为空");
+			return this;
+		}
+		/**
+		 * 判断名称后面是否为单位（如 上海路、温州村）的规则，默认 UnitSuffixRules.defaults()
+		 * @param unitSuffixRules
+		 * @return
+		 */
+		public Builder withUnitSuffixRules(UnitSuffixRules unitSuffixRules) {
+			this.unitSuffixRules = Preconditions.checkNotNull(unitSuffixRules, "unitSuffixRules不能为空");
+			return this;
+		}
+		/**
+		 * 乡镇、村字典文件，见 CpcaTownDictionary，默认不匹配乡镇、村
+		 * @param file
+		 * @return
+		 */
+		public Builder withTownFile(String file) {
+			this.townFile = Preconditions.checkNotNull(file, "file不能为空");
+			return this;
+		}
+		/**
+		 * 精确匹配不到时，模糊匹配地址开头写错一个字的名称（如 杭洲市），默认不开启
+		 * @param fuzzyMatch
+		 * @return
+		 */
+		public Builder withFuzzyMatch(boolean fuzzyMatch) {
+			this.fuzzyMatch = fuzzyMatch;
+			return this;
+		}
+		/**
+		 * 匹配前的输入规范化（全角转半角、繁体转简体、去掉空白和标点），见 CpcaNormalizer，默认不开启
+		 * @param normalizer 如 CpcaNormalizer.defaults()
+		 * @return
+		 */
+		public Builder withNormalizer(CpcaNormalizer normalizer) {
+			this.normalizer = Preconditions.checkNotNull(normalizer, "normalizer不能为空");
+			return this;
+		}
+		/**
+		 * 加入一个历史字典，transformAsOf(location, asOf) 按 asOf 当天生效的历史字典匹配，见 CpcaHistory
+		 * @param since 生效日期
+		 * @param file 格式同 withCpcaCvsFile
+		 * @return
+		 */
+		public Builder withHistory(LocalDate since, String file) {
+			this.history.put(Preconditions.checkNotNull(since, "since不能为空"),
+					Preconditions.checkNotNull(file, "file不能为空"));
+			return this;
+		}
 		public CpcaExtractor build() {
-			Preconditions.checkNotNull(this.cpcaCvsFile, "cpcaCvsFile不能为空");
-			return new CpcaExtractorImpl(this.cpcaCvsFile); 
+			Preconditions.checkArgument(this.cpcaCvsFile != null || this.snapshotFile != null,
+					"cpcaCvsFile和snapshotFile不能都为空");
+			CpcaExtractorImpl cpcaExtractor = new CpcaExtractorImpl(this.cpcaCvsFile, this.snapshotFile);
+			if (this.execution != null) {
+				cpcaExtractor.setExecution(this.execution);
+			}
+			if (this.resultCacheSize > 0) {
+				cpcaExtractor.setResultCache(this.resultCacheSize);
+			}
+			if (this.prefixCacheSize > 0) {
+				cpcaExtractor.setPrefixCache(this.prefixCacheSize);
+			}
+			if (this.metrics != null) {
+				cpcaExtractor.setMetrics(this.metrics);
+			}
+			if (this.unitSuffixRules != null) {
+				cpcaExtractor.setUnitSuffixRules(this.unitSuffixRules);
+			}
+			if (this.townFile != null) {
+				try {
+					cpcaExtractor.setTownDictionary(CpcaTownDictionary.load(this.townFile));
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+			if (this.fuzzyMatch) {
+				cpcaExtractor.setFuzzyMatch(true);
+			}
+			if (this.normalizer != null) {
+				cpcaExtractor.setNormalizer(this.normalizer);
+			}
+			if (!this.history.isEmpty()) {
+				try {
+					cpcaExtractor.setHistory(this.history);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+			return cpcaExtractor; 
 		}
 	}
 }
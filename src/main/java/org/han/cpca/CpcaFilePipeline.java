@@ -0,0 +1,302 @@
+package org.han.cpca;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * 大文件批量提取：读取 CSV/TSV 文件中的地址列，在每行末尾追加 省、市、区、编码、去掉省市区后的地址 五列后写出
+ *
+ * 输入文件按块做内存映射，块在行边界处切分，多个块并行处理，输出顺序和输入一致。
+ * 只支持单行记录（引号内不能有换行），文件编码为 UTF-8
+ *
+ */
+public class CpcaFilePipeline {
+	private final static Logger logger = LoggerFactory.getLogger(CpcaFilePipeline.class);
+	private final static int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+	private final static String[] ENRICHED_HEADERS = { "province", "city", "area", "adcode", "address" };
+
+	private final CpcaExtractor cpcaExtractor;
+	private final char delimiter;
+	private final int addressColumn;
+	private final boolean hasHeader;
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 *
+	 * @param cpcaExtractor
+	 * @param delimiter 列分隔符，如 ',' 或 '\t'
+	 * @param addressColumn 地址所在列，从 0 开始
+	 * @param hasHeader 第一行是否为表头，是的话表头同样追加五列列名
+	 */
+	public CpcaFilePipeline(CpcaExtractor cpcaExtractor, char delimiter, int addressColumn, boolean hasHeader) {
+		Preconditions.checkNotNull(cpcaExtractor, "cpcaExtractor不能为空");
+		Preconditions.checkArgument(addressColumn >= 0, "addressColumn不能小于0");
+		Preconditions.checkArgument(delimiter != '"' && delimiter != '\n' && delimiter != '\r', "delimiter不合法");
+		this.cpcaExtractor = cpcaExtractor;
+		this.delimiter = delimiter;
+		this.addressColumn = addressColumn;
+		this.hasHeader = hasHeader;
+	}
+
+	public void setChunkSize(int chunkSize) {
+		Preconditions.checkArgument(chunkSize > 0, "chunkSize必须大于0");
+		this.chunkSize = chunkSize;
+	}
+
+	public void setThreads(int threads) {
+		Preconditions.checkArgument(threads > 0, "threads必须大于0");
+		this.threads = threads;
+	}
+
+	/**
+	 *
+	 * @param input
+	 * @param output
+	 * @return 处理的行数（含表头）
+	 * @throws IOException
+	 */
+	public long enrich(Path input, Path output) throws IOException {
+		long t1 = System.currentTimeMillis();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		// 最多同时有 threads * 2 个块在处理或等待写出，控制内存占用
+		Deque<Future<Chunk>> pending = new ArrayDeque<>();
+		long lines = 0;
+		try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+				OutputStream out = Files.newOutputStream(output)) {
+			long size = in.size();
+			long position = 0;
+			boolean first = true;
+			while (position < size) {
+				MappedByteBuffer buffer = mapChunk(in, position, size);
+				position += buffer.limit();
+				boolean header = first && hasHeader;
+				first = false;
+				pending.addLast(executor.submit(() -> process(buffer, header)));
+				if (pending.size() >= threads * 2) {
+					lines += write(pending.removeFirst(), out);
+				}
+			}
+			while (!pending.isEmpty()) {
+				lines += write(pending.removeFirst(), out);
+			}
+		} finally {
+			for (Future<Chunk> future : pending) {
+				future.cancel(true);
+			}
+			executor.shutdownNow();
+		}
+		logger.info("{} 处理完成，共 {} 行，耗时 {} ms", input, lines, System.currentTimeMillis() - t1);
+		return lines;
+	}
+
+	/**
+	 * 从 position 开始映射一块，块的结尾落在换行符之后（文件末尾除外）；单行超过 chunkSize 时扩大映射范围
+	 */
+	private MappedByteBuffer mapChunk(FileChannel in, long position, long size) throws IOException {
+		long length = Math.min(chunkSize, size - position);
+		while (true) {
+			MappedByteBuffer buffer = in.map(MapMode.READ_ONLY, position, length);
+			if (position + length == size) {
+				return buffer;
+			}
+			for (int i = (int) length - 1; i >= 0; i--) {
+				if (buffer.get(i) == '\n') {
+					buffer.limit(i + 1);
+					return buffer;
+				}
+			}
+			length = Math.min(Math.min(length * 2, Integer.MAX_VALUE), size - position);
+		}
+	}
+
+	private long write(Future<Chunk> future, OutputStream out) throws IOException {
+		Chunk chunk;
+		try {
+			chunk = future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+		out.write(chunk.bytes);
+		return chunk.lines;
+	}
+
+	private Chunk process(ByteBuffer buffer, boolean header) throws CharacterCodingException {
+		CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		CharBuffer chars = decoder.decode(buffer);
+		StringBuilder sb = new StringBuilder(chars.length() + chars.length() / 2);
+		long lines = 0;
+		int len = chars.length();
+		int lineBegin = 0;
+		while (lineBegin < len) {
+			int lineEnd = lineBegin;
+			while (lineEnd < len && chars.get(lineEnd) != '\n') {
+				lineEnd++;
+			}
+			int contentEnd = lineEnd > lineBegin && chars.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+			sb.append(chars, lineBegin, contentEnd);
+			if (header && lines == 0) {
+				for (String name : ENRICHED_HEADERS) {
+					sb.append(delimiter).append(name);
+				}
+			} else {
+				enrichLine(chars, lineBegin, contentEnd, sb);
+			}
+			sb.append(chars, contentEnd, Math.min(lineEnd + 1, len));
+			lines++;
+			lineBegin = lineEnd + 1;
+		}
+		return new Chunk(sb.toString().getBytes(StandardCharsets.UTF_8), lines);
+	}
+
+	private void enrichLine(CharBuffer chars, int begin, int end, StringBuilder sb) {
+		String location = field(chars, begin, end, addressColumn);
+		CpcaSeg cpcaSeg = location == null ? CpcaSeg.none() : cpcaExtractor.transform(location);
+		appendField(sb, cpcaSeg.getProvinceName());
+		appendField(sb, cpcaSeg.getCityName());
+		appendField(sb, cpcaSeg.getAreaName());
+		appendField(sb, cpcaSeg.getCpcaCode());
+		appendField(sb, cpcaSeg.getAddress());
+	}
+
+	/**
+	 * 取一行中的第 column 列，支持双引号包围的列（"" 表示一个引号），列不存在时返回 null
+	 */
+	String field(CharSequence line, int begin, int end, int column) {
+		int pos = begin;
+		for (int c = 0; c < column; c++) {
+			pos = skipField(line, pos, end);
+			if (pos >= end) {
+				return null;
+			}
+			pos++;// 跳过分隔符
+		}
+		if (pos < end && line.charAt(pos) == '"') {
+			StringBuilder sb = new StringBuilder();
+			for (int i = pos + 1; i < end; i++) {
+				char ch = line.charAt(i);
+				if (ch == '"') {
+					if (i + 1 < end && line.charAt(i + 1) == '"') {
+						sb.append('"');
+						i++;
+					} else {
+						break;
+					}
+				} else {
+					sb.append(ch);
+				}
+			}
+			return sb.toString();
+		}
+		int fieldEnd = pos;
+		while (fieldEnd < end && line.charAt(fieldEnd) != delimiter) {
+			fieldEnd++;
+		}
+		return line.subSequence(pos, fieldEnd).toString();
+	}
+
+	/**
+	 * 返回 pos 开始的列之后的分隔符位置（没有分隔符时返回 end）
+	 */
+	private int skipField(CharSequence line, int pos, int end) {
+		boolean quoted = pos < end && line.charAt(pos) == '"';
+		int i = quoted ? pos + 1 : pos;
+		while (i < end) {
+			char ch = line.charAt(i);
+			if (quoted) {
+				if (ch == '"') {
+					if (i + 1 < end && line.charAt(i + 1) == '"') {
+						i++;
+					} else {
+						quoted = false;
+					}
+				}
+			} else if (ch == delimiter) {
+				return i;
+			}
+			i++;
+		}
+		return end;
+	}
+
+	private void appendField(StringBuilder sb, String value) {
+		sb.append(delimiter);
+		if (value == null || value.isEmpty()) {
+			return;
+		}
+		boolean quote = false;
+		for (int i = 0; i < value.length() && !quote; i++) {
+			char ch = value.charAt(i);
+			quote = ch == delimiter || ch == '"' || ch == '\n' || ch == '\r';
+		}
+		if (!quote) {
+			sb.append(value);
+			return;
+		}
+		sb.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char ch = value.charAt(i);
+			if (ch == '"') {
+				sb.append('"');
+			}
+			sb.append(ch);
+		}
+		sb.append('"');
+	}
+
+	private static class Chunk {
+		private final byte[] bytes;
+		private final long lines;
+
+		Chunk(byte[] bytes, long lines) {
+			this.bytes = bytes;
+			this.lines = lines;
+		}
+	}
+
+	/**
+	 * 用法：CpcaFilePipeline 输入文件 输出文件 [地址列(从0开始，默认0)] [分隔符(默认 , 可用 \t)] [无表头时传 noheader]
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("usage: CpcaFilePipeline <input> <output> [addressColumn] [delimiter] [noheader]");
+			System.exit(1);
+		}
+		int column = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+		char delimiter = args.length > 3 ? ("\\t".equals(args[3]) ? '\t' : args[3].charAt(0)) : ',';
+		boolean hasHeader = args.length <= 4 || !"noheader".equalsIgnoreCase(args[4]);
+		CpcaExtractor cpcaExtractor = CpcaExtractors.builder().withCpcaCvsFile("adcodes.csv").build();
+		new CpcaFilePipeline(cpcaExtractor, delimiter, column, hasHeader).enrich(Paths.get(args[0]),
+				Paths.get(args[1]));
+	}
+}
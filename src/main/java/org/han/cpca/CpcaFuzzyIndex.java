@@ -0,0 +1,196 @@
+package org.han.cpca;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 按编辑距离 1（替换、插入或删除一个字）查找名称，如 杭洲市、杭市、杭州州市 都能找到 杭州市。
+ * 删除邻域索引：每个名称本身及删掉任意一个字后的串都登记到该名称；查找时对输入本身及删掉任意一个字后的串查表，
+ * 编辑距离不超过 1 的名称必然在其中，找到的候选再逐个校验。串按 64 位哈希登记，查找时由前缀哈希算出删掉每个字后的哈希，
+ * 不生成子串
+ *
+ * 短于 MIN_NAME_LENGTH 的名称（如 杭州）相差一个字的太多，不参与模糊查找
+ *
+ * 构建后只读，可以在多个线程间共享
+ *
+ */
+final class CpcaFuzzyIndex {
+	static final int MIN_NAME_LENGTH = 3;
+	private static final long PRIME = 0x100000001B3L;
+	private final String[] names;
+	// 开放寻址表，keys 为串的哈希，heads 为该哈希第一个登记项，-1 为空
+	private final long[] keys;
+	private final int[] heads;
+	private final int mask;
+	// 登记项按链表保存：名称下标、下一项
+	private final int[] entryNames;
+	private final int[] entryNext;
+	// PRIME 的各次幂
+	private final long[] powers;
+	// 最长的名称长度
+	final int maxNameLength;
+
+	/**
+	 *
+	 * @param names 短于 MIN_NAME_LENGTH 的忽略，重复的只保留一个
+	 */
+	CpcaFuzzyIndex(Collection<String> names) {
+		Set<String> distinct = new LinkedHashSet<>();
+		int maxNameLength = 0;
+		int entries = 0;
+		for (String name : names) {
+			if (name.length() >= MIN_NAME_LENGTH && distinct.add(name)) {
+				maxNameLength = Math.max(maxNameLength, name.length());
+				entries += name.length() + 1;
+			}
+		}
+		this.names = distinct.toArray(new String[distinct.size()]);
+		this.maxNameLength = maxNameLength;
+		this.powers = new long[maxNameLength + 2];
+		powers[0] = 1;
+		for (int i = 1; i < powers.length; i++) {
+			powers[i] = powers[i - 1] * PRIME;
+		}
+		int capacity = Integer.highestOneBit(Math.max(entries, 4) * 2 - 1) << 1;
+		this.keys = new long[capacity];
+		this.heads = new int[capacity];
+		this.mask = capacity - 1;
+		Arrays.fill(heads, -1);
+		this.entryNames = new int[entries];
+		this.entryNext = new int[entries];
+		long[] prefix = new long[maxNameLength + 1];
+		int entry = 0;
+		for (int id = 0; id < this.names.length; id++) {
+			String name = this.names[id];
+			int length = prefixHashes(name, 0, name.length(), prefix);
+			entry = add(prefix[length], id, entry);
+			for (int k = 0; k < length; k++) {
+				entry = add(deletionHash(prefix, length, k), id, entry);
+			}
+		}
+	}
+
+	private int add(long key, int id, int entry) {
+		int slot = slot(key);
+		while (heads[slot] >= 0 && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		// 同一个名称删掉相邻的相同字得到同一个串，只登记一次
+		for (int e = heads[slot]; e >= 0; e = entryNext[e]) {
+			if (entryNames[e] == id) {
+				return entry;
+			}
+		}
+		keys[slot] = key;
+		entryNames[entry] = id;
+		entryNext[entry] = heads[slot];
+		heads[slot] = entry;
+		return entry + 1;
+	}
+
+	private int slot(long key) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+	}
+
+	int size() {
+		return names.length;
+	}
+
+	/**
+	 * 和 s 的 [0, length) 编辑距离恰好为 1 的名称，如 杭洲市 为 杭州市、株洲市
+	 * @param s
+	 * @param length
+	 * @return 没有时为空
+	 */
+	List<String> lookup(CharSequence s, int length) {
+		if (length < MIN_NAME_LENGTH - 1 || length > maxNameLength + 1) {
+			return Collections.emptyList();
+		}
+		long[] prefix = new long[length + 1];
+		prefixHashes(s, 0, length, prefix);
+		List<String> found = find(prefix[length], s, length, Collections.emptyList());
+		for (int k = 0; k < length; k++) {
+			found = find(deletionHash(prefix, length, k), s, length, found);
+		}
+		return found;
+	}
+
+	/**
+	 * 在 key 的登记项中校验候选，加入 found
+	 * @return found，原来为空时返回新的列表
+	 */
+	private List<String> find(long key, CharSequence s, int length, List<String> found) {
+		int slot = slot(key);
+		while (heads[slot] >= 0) {
+			if (keys[slot] == key) {
+				for (int e = heads[slot]; e >= 0; e = entryNext[e]) {
+					String name = names[entryNames[e]];
+					if (isDistanceOne(name, s, length) && !found.contains(name)) {
+						if (found.isEmpty()) {
+							found = new ArrayList<>(2);
+						}
+						found.add(name);
+					}
+				}
+				return found;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return found;
+	}
+
+	/**
+	 * name 和 s 的 [0, length) 编辑距离是否恰好为 1
+	 */
+	static boolean isDistanceOne(String name, CharSequence s, int length) {
+		int diff = name.length() - length;
+		if (diff < -1 || diff > 1) {
+			return false;
+		}
+		int common = 0;
+		int shorter = Math.min(name.length(), length);
+		while (common < shorter && name.charAt(common) == s.charAt(common)) {
+			common++;
+		}
+		// 第一个不同处之后的部分相同：替换时两边各跳过一个字，插入、删除时较长的一边跳过一个字
+		int i = common + (diff >= 0 ? 1 : 0);
+		int j = common + (diff <= 0 ? 1 : 0);
+		if (diff == 0 && common == length) {
+			return false;
+		}
+		while (i < name.length() && j < length) {
+			if (name.charAt(i++) != s.charAt(j++)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * prefix[i] 为 s 的 [from, from + i) 的哈希
+	 * @return 长度
+	 */
+	private static int prefixHashes(CharSequence s, int from, int to, long[] prefix) {
+		long hash = 0;
+		prefix[0] = 0;
+		for (int i = from; i < to; i++) {
+			hash = hash * PRIME + s.charAt(i) + 1;
+			prefix[i - from + 1] = hash;
+		}
+		return to - from;
+	}
+
+	/**
+	 * 删掉第 k 个字后的哈希：前 k 个字的哈希接上第 k 个字之后部分的哈希
+	 */
+	private long deletionHash(long[] prefix, int length, int k) {
+		long tailPower = powers[length - k - 1];
+		long tail = prefix[length] - prefix[k + 1] * tailPower;
+		return prefix[k] * tailPower + tail;
+	}
+}
@@ -0,0 +1,156 @@
+package org.han.cpca;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.han.cpca.CpcaExtractorImpl.AddressInfo;
+import org.han.cpca.CpcaExtractorImpl.CpcaDictionary;
+import org.han.cpca.CpcaExtractorImpl.Rank;
+
+/**
+ * 按生效日期排序的多个历史字典，transformAsOf(location, asOf) 使用 asOf 当天生效的版本。
+ * 各版本共用按所有版本名称的并集构建的一个自动机（见 CpcaTrie.withValues），文件中相同的行共用同一条记录，
+ * 和上一个版本完全相同的匹配名共用同一个 MatchAddressInfo；每个版本另外只保存 value 数组和按编码的索引，
+ * 十个版本的内存远小于十份字典
+ *
+ * 旧编码按版本顺序逐个转换到当前字典：下一个版本中仍有该编码的不变；已撤销的在（转换后的）上级下找去掉 省、市、区、县 等
+ * 后名称相同的同级记录，如 富阳市 330183 改为 富阳区 330111；找不到的（如并入其他区县）转换为上级的编码
+ *
+ * 加载后只读，可以在多个线程间共享
+ *
+ */
+final class CpcaHistory {
+	// 名称末尾表示级别、改名时常变化的字
+	private static final String RANK_SUFFIXES = "省市区县旗盟州";
+	private final LocalDate[] dates;
+	final CpcaDictionary[] dictionaries;
+
+	/**
+	 *
+	 * @param dictionaries 按生效日期（CpcaDictionary.since）排序
+	 */
+	CpcaHistory(CpcaDictionary[] dictionaries) {
+		this.dictionaries = dictionaries;
+		this.dates = new LocalDate[dictionaries.length];
+		for (int i = 0; i < dictionaries.length; i++) {
+			dates[i] = dictionaries[i].since;
+		}
+	}
+
+	/**
+	 * asOf 当天生效的版本，早于所有版本时取最早的
+	 * @param asOf
+	 * @return
+	 */
+	CpcaDictionary dictionary(LocalDate asOf) {
+		return dictionaries[indexOf(asOf)];
+	}
+
+	private int indexOf(LocalDate asOf) {
+		int index = Arrays.binarySearch(dates, asOf);
+		return index >= 0 ? index : Math.max(0, -index - 2);
+	}
+
+	/**
+	 * asOf 当天生效的编码转换为 current 中的编码
+	 * @param code
+	 * @param asOf
+	 * @param current 当前字典
+	 * @return 当天生效的版本中没有该编码时返回 0
+	 */
+	int currentCode(int code, LocalDate asOf, CpcaDictionary current) {
+		int index = indexOf(asOf);
+		return dictionaries[index].addressInfo(code) == null ? 0 : currentCode(code, index, current);
+	}
+
+	/**
+	 * asOf 当天生效的版本中所有编码到 current 中编码的对应关系，编码为 6 位字符串
+	 * @param asOf
+	 * @param current
+	 * @return
+	 */
+	Map<String, String> currentCodes(LocalDate asOf, CpcaDictionary current) {
+		int index = indexOf(asOf);
+		Map<String, String> codes = new LinkedHashMap<>();
+		for (AddressInfo addressInfo : dictionaries[index].addressInfos) {
+			if (!codes.containsKey(addressInfo.getCpcaCode())) {
+				int code = currentCode(addressInfo.getCode(), index, current);
+				codes.put(addressInfo.getCpcaCode(), code == 0 ? null : current.addressInfo(code).getCpcaCode());
+			}
+		}
+		return Collections.unmodifiableMap(codes);
+	}
+
+	private int currentCode(int code, int index, CpcaDictionary current) {
+		for (int i = index; i < dictionaries.length && code != 0; i++) {
+			code = nextCode(dictionaries[i], i + 1 < dictionaries.length ? dictionaries[i + 1] : current, code);
+		}
+		return code;
+	}
+
+	/**
+	 * from 中的编码转换为 to 中的编码
+	 * @return 没有对应的记录时返回 0
+	 */
+	private static int nextCode(CpcaDictionary from, CpcaDictionary to, int code) {
+		if (to.addressInfo(code) != null) {
+			return code;
+		}
+		AddressInfo addressInfo = from.addressInfo(code);
+		if (addressInfo == null) {
+			return 0;
+		}
+		int parent = parentCode(from, addressInfo);
+		int toParent = parent == 0 ? 0 : nextCode(from, to, parent);
+		int renamed = findRenamed(to, addressInfo, toParent);
+		return renamed != 0 ? renamed : toParent;
+	}
+
+	/**
+	 * from 中最近的上级，如区县为所在的市，没有市（如 省直辖县）时为省
+	 */
+	private static int parentCode(CpcaDictionary from, AddressInfo addressInfo) {
+		if (addressInfo.getRank() == Rank.RANK_COUNTY) {
+			int city = addressInfo.getCode() / Rank.RANK_CITY.divisor() * Rank.RANK_CITY.divisor();
+			if (from.addressInfo(city) != null) {
+				return city;
+			}
+		}
+		if (addressInfo.getRank() != Rank.RANK_PROVINCE) {
+			int province = addressInfo.getCode() / Rank.RANK_PROVINCE.divisor() * Rank.RANK_PROVINCE.divisor();
+			if (from.addressInfo(province) != null) {
+				return province;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * to 中 parent 下和 addressInfo 同级、去掉级别字后名称相同的记录
+	 * @param parent 为 0 时不限上级
+	 */
+	private static int findRenamed(CpcaDictionary to, AddressInfo addressInfo, int parent) {
+		AddressInfo parentInfo = parent == 0 ? null : to.addressInfo(parent);
+		String baseName = baseName(addressInfo.getName());
+		for (AddressInfo candidate : to.addressInfos) {
+			if (candidate.getRank() == addressInfo.getRank() && (parentInfo == null || candidate.belongTo(parentInfo))
+					&& baseName.equals(baseName(candidate.getName()))) {
+				return candidate.getCode();
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * 去掉末尾的级别字，如 富阳市、富阳区 都为 富阳；只有两个字的不去掉
+	 */
+	static String baseName(String name) {
+		if (name.length() > 2 && RANK_SUFFIXES.indexOf(name.charAt(name.length() - 1)) >= 0) {
+			return name.substring(0, name.length() - 1);
+		}
+		return name;
+	}
+}
@@ -0,0 +1,358 @@
+package org.han.cpca;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * 不经过 Jackson，直接把 CpcaSeg 编码成 UTF-8 JSON。
+ * 字段顺序、转义规则和 Jackson 默认配置一致：includeNulls 为 false 时输出和 encodeJson（NON_NULL）的 UTF-8 字节相同，
+ * 为 true 时和 Spring MVC 默认的 ObjectMapper 输出相同（null 字段输出为 null）。
+ * 字典中的名称、编码使用加载字典时预先编码好的字节
+ *
+ * 线程安全，可以在多个线程间共享
+ *
+ */
+public final class CpcaJsonEncoder {
+	private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] NULL = bytes("null");
+	private static final byte[] PROVINCE_NAME = bytes("\"provinceName\":");
+	private static final byte[] CITY_NAME = bytes("\"cityName\":");
+	private static final byte[] AREA_NAME = bytes("\"areaName\":");
+	private static final byte[] CPCA_CODE = bytes("\"cpcaCode\":");
+	private static final byte[] ADDRESS = bytes("\"address\":");
+	private static final byte[] PROVINCE_NAME_INDEX = bytes("\"provinceNameIndex\":");
+	private static final byte[] CITY_NAME_INDEX = bytes("\"cityNameIndex\":");
+	private static final byte[] AREA_NAME_INDEX = bytes("\"areaNameIndex\":");
+	private static final byte[] TOWN_NAME = bytes("\"townName\":");
+	private static final byte[] TOWN_CODE = bytes("\"townCode\":");
+	private static final byte[] VILLAGE_NAME = bytes("\"villageName\":");
+	private static final byte[] VILLAGE_CODE = bytes("\"villageCode\":");
+	private static final byte[] TOWN_NAME_INDEX = bytes("\"townNameIndex\":");
+	private static final byte[] VILLAGE_NAME_INDEX = bytes("\"villageNameIndex\":");
+	private static final byte[] MISSPELLED_NAME = bytes("\"misspelledName\":");
+	private static final byte[] CORRECTED_NAME = bytes("\"correctedName\":");
+	private static final byte[] BEGIN_INDEX = bytes("\"beginIndex\":");
+	private static final byte[] END_INDEX = bytes("\"endIndex\":");
+	// encodeAll 写出到 OutputStream 时，缓冲超过该大小就写出一次
+	private static final int FLUSH_SIZE = 8192;
+
+	private final boolean includeNulls;
+	// 字典中名称、编码对应的 JSON 字符串（含引号），没有时返回 null
+	private final Function<String, byte[]> dictionaryBytes;
+
+	/**
+	 *
+	 * @param includeNulls null 字段是否输出
+	 */
+	public CpcaJsonEncoder(boolean includeNulls) {
+		this(includeNulls, s -> null);
+	}
+
+	CpcaJsonEncoder(boolean includeNulls, Function<String, byte[]> dictionaryBytes) {
+		this.includeNulls = includeNulls;
+		this.dictionaryBytes = dictionaryBytes;
+	}
+
+	public byte[] encode(CpcaSeg cpcaSeg) {
+		JsonBuffer buffer = new JsonBuffer(256);
+		write(cpcaSeg, buffer);
+		return buffer.toByteArray();
+	}
+
+	public void encode(CpcaSeg cpcaSeg, OutputStream out) throws IOException {
+		JsonBuffer buffer = new JsonBuffer(256);
+		write(cpcaSeg, buffer);
+		buffer.writeTo(out);
+	}
+
+	/**
+	 * 写入 target 当前位置
+	 * @param cpcaSeg
+	 * @param target
+	 * @throws java.nio.BufferOverflowException target 剩余空间不够
+	 */
+	public void encode(CpcaSeg cpcaSeg, ByteBuffer target) {
+		JsonBuffer buffer = new JsonBuffer(256);
+		write(cpcaSeg, buffer);
+		target.put(buffer.bytes, 0, buffer.count);
+	}
+
+	/**
+	 * 编码成 JSON 数组，边编码边写出
+	 * @param cpcaSegs
+	 * @param out
+	 * @throws IOException
+	 */
+	public void encodeAll(CpcaSeg[] cpcaSegs, OutputStream out) throws IOException {
+		JsonBuffer buffer = new JsonBuffer(FLUSH_SIZE + 512);
+		buffer.write('[');
+		for (int i = 0; i < cpcaSegs.length; i++) {
+			if (i > 0) {
+				buffer.write(',');
+			}
+			write(cpcaSegs[i], buffer);
+			if (buffer.count >= FLUSH_SIZE) {
+				buffer.writeTo(out);
+				buffer.count = 0;
+			}
+		}
+		buffer.write(']');
+		buffer.writeTo(out);
+	}
+
+	/**
+	 * 每个结果一行（NDJSON），边编码边写出
+	 * @param cpcaSegs
+	 * @param out
+	 * @throws IOException
+	 */
+	public void encodeLines(CpcaSeg[] cpcaSegs, OutputStream out) throws IOException {
+		JsonBuffer buffer = new JsonBuffer(FLUSH_SIZE + 512);
+		for (CpcaSeg cpcaSeg : cpcaSegs) {
+			write(cpcaSeg, buffer);
+			buffer.write('\n');
+			if (buffer.count >= FLUSH_SIZE) {
+				buffer.writeTo(out);
+				buffer.count = 0;
+			}
+		}
+		buffer.writeTo(out);
+	}
+
+	private void write(CpcaSeg cpcaSeg, JsonBuffer buffer) {
+		if (cpcaSeg == null) {
+			buffer.write(NULL);
+			return;
+		}
+		buffer.write('{');
+		boolean first = true;
+		first = writeString(buffer, first, PROVINCE_NAME, cpcaSeg.getProvinceName());
+		first = writeString(buffer, first, CITY_NAME, cpcaSeg.getCityName());
+		first = writeString(buffer, first, AREA_NAME, cpcaSeg.getAreaName());
+		first = writeString(buffer, first, CPCA_CODE, cpcaSeg.getCpcaCode());
+		first = writeString(buffer, first, ADDRESS, cpcaSeg.getAddress());
+		first = writeIndex(buffer, first, PROVINCE_NAME_INDEX, cpcaSeg.getProvinceNameIndex());
+		first = writeIndex(buffer, first, CITY_NAME_INDEX, cpcaSeg.getCityNameIndex());
+		first = writeIndex(buffer, first, AREA_NAME_INDEX, cpcaSeg.getAreaNameIndex());
+		// 乡镇、村、模糊匹配的改正和 CpcaSeg 上的 @JsonInclude(NON_NULL) 一致，null 时不输出
+		first = writeNonNull(buffer, first, TOWN_NAME, cpcaSeg.getTownName());
+		first = writeNonNull(buffer, first, TOWN_CODE, cpcaSeg.getTownCode());
+		first = writeNonNull(buffer, first, VILLAGE_NAME, cpcaSeg.getVillageName());
+		first = writeNonNull(buffer, first, VILLAGE_CODE, cpcaSeg.getVillageCode());
+		if (cpcaSeg.getTownNameIndex() != null) {
+			first = writeIndex(buffer, first, TOWN_NAME_INDEX, cpcaSeg.getTownNameIndex());
+		}
+		if (cpcaSeg.getVillageNameIndex() != null) {
+			first = writeIndex(buffer, first, VILLAGE_NAME_INDEX, cpcaSeg.getVillageNameIndex());
+		}
+		first = writeNonNull(buffer, first, MISSPELLED_NAME, cpcaSeg.getMisspelledName());
+		writeNonNull(buffer, first, CORRECTED_NAME, cpcaSeg.getCorrectedName());
+		buffer.write('}');
+	}
+
+	private boolean writeString(JsonBuffer buffer, boolean first, byte[] name, String value) {
+		if (value == null && !includeNulls) {
+			return first;
+		}
+		if (!first) {
+			buffer.write(',');
+		}
+		buffer.write(name);
+		if (value == null) {
+			buffer.write(NULL);
+			return false;
+		}
+		byte[] encoded = dictionaryBytes.apply(value);
+		if (encoded != null) {
+			buffer.write(encoded);
+		} else {
+			buffer.writeQuoted(value);
+		}
+		return false;
+	}
+
+	private boolean writeNonNull(JsonBuffer buffer, boolean first, byte[] name, String value) {
+		return value == null ? first : writeString(buffer, first, name, value);
+	}
+
+	private boolean writeIndex(JsonBuffer buffer, boolean first, byte[] name, CpcaIndex index) {
+		if (index == null && !includeNulls) {
+			return first;
+		}
+		if (!first) {
+			buffer.write(',');
+		}
+		buffer.write(name);
+		if (index == null) {
+			buffer.write(NULL);
+			return false;
+		}
+		buffer.write('{');
+		boolean indexFirst = writeInt(buffer, true, BEGIN_INDEX, index.getBeginIndex());
+		writeInt(buffer, indexFirst, END_INDEX, index.getEndIndex());
+		buffer.write('}');
+		return false;
+	}
+
+	private boolean writeInt(JsonBuffer buffer, boolean first, byte[] name, Integer value) {
+		if (value == null && !includeNulls) {
+			return first;
+		}
+		if (!first) {
+			buffer.write(',');
+		}
+		buffer.write(name);
+		if (value == null) {
+			buffer.write(NULL);
+		} else {
+			buffer.writeInt(value);
+		}
+		return false;
+	}
+
+	/**
+	 * value 编码后的 JSON 字符串（含引号）
+	 */
+	static byte[] quote(String value) {
+		JsonBuffer buffer = new JsonBuffer(value.length() * 3 + 2);
+		buffer.writeQuoted(value);
+		return buffer.toByteArray();
+	}
+
+	private static byte[] bytes(String ascii) {
+		return ascii.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * 可扩容的字节缓冲
+	 */
+	static final class JsonBuffer {
+		private byte[] bytes;
+		private int count;
+
+		JsonBuffer(int capacity) {
+			this.bytes = new byte[capacity];
+		}
+
+		private void ensure(int extra) {
+			if (count + extra > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, count + extra));
+			}
+		}
+
+		void write(char ascii) {
+			ensure(1);
+			bytes[count++] = (byte) ascii;
+		}
+
+		void write(byte[] b) {
+			ensure(b.length);
+			System.arraycopy(b, 0, bytes, count, b.length);
+			count += b.length;
+		}
+
+		void writeInt(int value) {
+			ensure(11);
+			if (value == Integer.MIN_VALUE) {
+				write(bytes("-2147483648"));
+				return;
+			}
+			if (value < 0) {
+				bytes[count++] = '-';
+				value = -value;
+			}
+			int digits = 1;
+			for (int v = value; v >= 10; v /= 10) {
+				digits++;
+			}
+			for (int i = count + digits - 1; i >= count; i--) {
+				bytes[i] = (byte) ('0' + value % 10);
+				value /= 10;
+			}
+			count += digits;
+		}
+
+		/**
+		 * 按 Jackson 的规则转义：引号、反斜杠、控制字符（\b \t \n \f \r，其余为 \\u 加 4 位大写十六进制），其他字符原样编码为 UTF-8；
+		 * 不成对的代理字符和 String.getBytes(UTF_8) 一样编码为 ?
+		 */
+		void writeQuoted(String value) {
+			int len = value.length();
+			ensure(len * 3 + 2);
+			byte[] b = bytes;
+			int pos = count;
+			b[pos++] = '"';
+			for (int i = 0; i < len; i++) {
+				char ch = value.charAt(i);
+				if (ch < 0x80) {
+					if (ch >= 0x20 && ch != '"' && ch != '\\') {
+						b[pos++] = (byte) ch;
+						continue;
+					}
+					count = pos;
+					ensure(len * 3 - i * 3 + 6);
+					b = bytes;
+					b[pos++] = '\\';
+					switch (ch) {
+					case '"':
+					case '\\':
+						b[pos++] = (byte) ch;
+						break;
+					case '\b':
+						b[pos++] = 'b';
+						break;
+					case '\t':
+						b[pos++] = 't';
+						break;
+					case '\n':
+						b[pos++] = 'n';
+						break;
+					case '\f':
+						b[pos++] = 'f';
+						break;
+					case '\r':
+						b[pos++] = 'r';
+						break;
+					default:
+						b[pos++] = 'u';
+						b[pos++] = '0';
+						b[pos++] = '0';
+						b[pos++] = HEX[ch >> 4];
+						b[pos++] = HEX[ch & 0xF];
+					}
+				} else if (ch < 0x800) {
+					b[pos++] = (byte) (0xC0 | (ch >> 6));
+					b[pos++] = (byte) (0x80 | (ch & 0x3F));
+				} else if (Character.isSurrogate(ch)) {
+					if (Character.isHighSurrogate(ch) && i + 1 < len && Character.isLowSurrogate(value.charAt(i + 1))) {
+						int cp = Character.toCodePoint(ch, value.charAt(++i));
+						b[pos++] = (byte) (0xF0 | (cp >> 18));
+						b[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+						b[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+						b[pos++] = (byte) (0x80 | (cp & 0x3F));
+					} else {
+						b[pos++] = '?';
+					}
+				} else {
+					b[pos++] = (byte) (0xE0 | (ch >> 12));
+					b[pos++] = (byte) (0x80 | ((ch >> 6) & 0x3F));
+					b[pos++] = (byte) (0x80 | (ch & 0x3F));
+				}
+			}
+			b[pos++] = '"';
+			count = pos;
+		}
+
+		void writeTo(OutputStream out) throws IOException {
+			out.write(bytes, 0, count);
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(bytes, count);
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package org.han.cpca;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.han.cpca.CpcaExtractorImpl.AddressInfo;
+import org.han.cpca.CpcaExtractorImpl.Rank;
+
+/**
+ * 按经纬度查找最近的区县：字典中各区县（没有下辖区县的市，如 东莞市，按市处理；没有下辖市、区县的省，如 香港、澳门、台湾，按省处理）
+ * 的经纬度建成 k-d 树，经纬度先转为单位球面上的三维坐标，三维直线距离最近的即球面距离最近的，不受经度在高纬度处变短的影响。
+ * 按中心点距离判断，边界附近的点可能落到相邻区县
+ *
+ * 树按数组保存：[lo, hi) 范围的根节点为中点，左右子树为两侧，切分轴按深度轮换
+ *
+ * 构建后只读，可以在多个线程间共享
+ *
+ */
+final class CpcaLocator {
+	private static final int DIMENSIONS = 3;
+	// 按树的顺序保存的坐标，第 i 个节点为 coords[i * 3, i * 3 + 3)
+	private final double[] coords;
+	private final AddressInfo[] addressInfos;
+
+	/**
+	 *
+	 * @param addressInfos 字典中的所有记录，没有经纬度的忽略
+	 */
+	CpcaLocator(List<AddressInfo> addressInfos) {
+		Set<Integer> citiesWithCounty = new HashSet<>();
+		Set<Integer> provincesWithCity = new HashSet<>();
+		for (AddressInfo addressInfo : addressInfos) {
+			if (addressInfo.getRank() == Rank.RANK_COUNTY && addressInfo.hasLocation()) {
+				citiesWithCounty.add(addressInfo.getCode() / 100);
+			}
+			if (addressInfo.getRank() != Rank.RANK_PROVINCE && addressInfo.hasLocation()) {
+				provincesWithCity.add(addressInfo.getCode() / 10000);
+			}
+		}
+		List<AddressInfo> points = new ArrayList<>();
+		Set<Integer> codes = new HashSet<>();
+		for (AddressInfo addressInfo : addressInfos) {
+			if (!addressInfo.hasLocation() || !codes.add(addressInfo.getCode())) {
+				continue;
+			}
+			if (addressInfo.getRank() == Rank.RANK_COUNTY
+					|| (addressInfo.getRank() == Rank.RANK_CITY
+							&& !citiesWithCounty.contains(addressInfo.getCode() / 100))
+					|| (addressInfo.getRank() == Rank.RANK_PROVINCE
+							&& !provincesWithCity.contains(addressInfo.getCode() / 10000))) {
+				points.add(addressInfo);
+			}
+		}
+		this.addressInfos = points.toArray(new AddressInfo[points.size()]);
+		double[][] vectors = new double[this.addressInfos.length][];
+		for (int i = 0; i < vectors.length; i++) {
+			vectors[i] = toVector(this.addressInfos[i].getLongitude(), this.addressInfos[i].getLatitude(),
+					new double[DIMENSIONS]);
+		}
+		build(vectors, 0, vectors.length, 0);
+		this.coords = new double[vectors.length * DIMENSIONS];
+		for (int i = 0; i < vectors.length; i++) {
+			System.arraycopy(vectors[i], 0, coords, i * DIMENSIONS, DIMENSIONS);
+		}
+	}
+
+	/**
+	 * 把 [lo, hi) 排成以中点为根的 k-d 树，vectors 和 addressInfos 一起调整顺序
+	 */
+	private void build(double[][] vectors, int lo, int hi, int depth) {
+		if (hi - lo <= 1) {
+			return;
+		}
+		int axis = depth % DIMENSIONS;
+		Integer[] order = new Integer[hi - lo];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = lo + i;
+		}
+		Arrays.sort(order, Comparator.comparingDouble(i -> vectors[i][axis]));
+		double[][] sortedVectors = new double[order.length][];
+		AddressInfo[] sortedInfos = new AddressInfo[order.length];
+		for (int i = 0; i < order.length; i++) {
+			sortedVectors[i] = vectors[order[i]];
+			sortedInfos[i] = addressInfos[order[i]];
+		}
+		System.arraycopy(sortedVectors, 0, vectors, lo, order.length);
+		System.arraycopy(sortedInfos, 0, addressInfos, lo, order.length);
+		int mid = (lo + hi) >>> 1;
+		build(vectors, lo, mid, depth + 1);
+		build(vectors, mid + 1, hi, depth + 1);
+	}
+
+	int size() {
+		return addressInfos.length;
+	}
+
+	/**
+	 * 离 (longitude, latitude) 最近的区县，没有任何带经纬度的记录时返回 null
+	 * @param longitude
+	 * @param latitude
+	 * @return
+	 */
+	AddressInfo nearest(double longitude, double latitude) {
+		if (addressInfos.length == 0) {
+			return null;
+		}
+		double[] target = toVector(longitude, latitude, new double[DIMENSIONS + 1]);
+		// target[3] 为目前找到的最近距离的平方
+		target[DIMENSIONS] = Double.MAX_VALUE;
+		return addressInfos[nearest(target, 0, addressInfos.length, 0, -1)];
+	}
+
+	/**
+	 * 在 [lo, hi) 中查找比 best 更近的节点
+	 * @return 最近的节点
+	 */
+	private int nearest(double[] target, int lo, int hi, int depth, int best) {
+		if (lo >= hi) {
+			return best;
+		}
+		int mid = (lo + hi) >>> 1;
+		int offset = mid * DIMENSIONS;
+		double dx = coords[offset] - target[0];
+		double dy = coords[offset + 1] - target[1];
+		double dz = coords[offset + 2] - target[2];
+		double distance = dx * dx + dy * dy + dz * dz;
+		if (distance < target[DIMENSIONS]) {
+			target[DIMENSIONS] = distance;
+			best = mid;
+		}
+		int axis = depth % DIMENSIONS;
+		double diff = target[axis] - coords[offset + axis];
+		// 先查目标所在的一侧，另一侧只在切分面比目前最近距离更近时才查
+		if (diff < 0) {
+			best = nearest(target, lo, mid, depth + 1, best);
+			if (diff * diff < target[DIMENSIONS]) {
+				best = nearest(target, mid + 1, hi, depth + 1, best);
+			}
+		} else {
+			best = nearest(target, mid + 1, hi, depth + 1, best);
+			if (diff * diff < target[DIMENSIONS]) {
+				best = nearest(target, lo, mid, depth + 1, best);
+			}
+		}
+		return best;
+	}
+
+	private static double[] toVector(double longitude, double latitude, double[] vector) {
+		double lon = Math.toRadians(longitude);
+		double lat = Math.toRadians(latitude);
+		double cosLat = Math.cos(lat);
+		vector[0] = cosLat * Math.cos(lon);
+		vector[1] = cosLat * Math.sin(lon);
+		vector[2] = Math.sin(lat);
+		return vector;
+	}
+}
@@ -0,0 +1,234 @@
+package org.han.cpca;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.base.Preconditions;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * transform 的统计：结果分类计数、每个地址的匹配数分布、地址长度分布、耗时分位（p50/p99/p999）
+ *
+ * 每次 transform 只累加几个 LongAdder，不按 tag 查找 meter，也不用 Micrometer 的 Timer（记录一次的开销和 transform 本身相当）；
+ * 分类、分布以 FunctionCounter 注册，读取时才汇总。耗时按 latencySampleRate 抽样记录到 LatencyHistogram，未抽中的调用不取时间
+ *
+ * 用法：new CpcaMetrics().bindTo(meterRegistry)，再通过 CpcaExtractors.Builder.withMetrics 设置
+ *
+ */
+public final class CpcaMetrics implements MeterBinder {
+	// 匹配数（去重后）分布的桶上界，最后一个桶为 +Inf；命中结果缓存、前缀缓存时没有匹配过程，不计入
+	static final int[] HIT_BUCKETS = { 0, 1, 2, 3, 4, 6, 8, 12, 16 };
+	// 地址长度分布的桶上界，最后一个桶为 +Inf
+	static final int[] LENGTH_BUCKETS = { 0, 8, 16, 24, 32, 48, 64, 128, 256 };
+	static final double[] PERCENTILES = { 0.5, 0.99, 0.999 };
+
+	private final LongAdder[] outcomes = newAdders(CpcaOutcome.values().length);
+	private final LongAdder[] hits = newAdders(HIT_BUCKETS.length + 1);
+	private final LongAdder[] lengths = newAdders(LENGTH_BUCKETS.length + 1);
+	private final int latencySampleRate;
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private volatile boolean bound;
+
+	/**
+	 * 每 8 次 transform 抽样 1 次记录耗时
+	 */
+	public CpcaMetrics() {
+		this(8);
+	}
+
+	/**
+	 *
+	 * @param latencySampleRate 平均每多少次 transform 记录 1 次耗时，1 表示每次都记录
+	 */
+	public CpcaMetrics(int latencySampleRate) {
+		Preconditions.checkArgument(latencySampleRate > 0, "latencySampleRate必须大于0");
+		this.latencySampleRate = latencySampleRate;
+	}
+
+	/**
+	 * 注册到 registry，注册后才开始记录耗时
+	 */
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		for (CpcaOutcome outcome : CpcaOutcome.values()) {
+			FunctionCounter.builder("cpca.transform.outcomes", outcomes[outcome.ordinal()], LongAdder::sum)
+					.tag("outcome", outcome.name().toLowerCase()).description("transform 结果分类计数")
+					.register(registry);
+		}
+		bindBuckets(registry, "cpca.transform.hits", "每个地址去重后的匹配数（累计分布）", HIT_BUCKETS, hits);
+		bindBuckets(registry, "cpca.transform.input.length", "地址长度（累计分布）", LENGTH_BUCKETS, lengths);
+		FunctionTimer.builder("cpca.transform.latency", latency, LatencyHistogram::count,
+				LatencyHistogram::totalNanos, TimeUnit.NANOSECONDS).description("transform 耗时（抽样）")
+				.register(registry);
+		for (double percentile : PERCENTILES) {
+			Gauge.builder("cpca.transform.latency.percentile", latency, h -> h.percentile(percentile) / 1e9)
+					.tag("phi", Double.toString(percentile)).baseUnit("seconds")
+					.description("transform 耗时分位数（抽样，最近 1~2 分钟）").register(registry);
+		}
+		this.bound = true;
+	}
+
+	/**
+	 * 按桶注册累计计数，tag le 为桶上界，和 Prometheus histogram 的 bucket 含义相同
+	 */
+	private static void bindBuckets(MeterRegistry registry, String name, String description, int[] bounds,
+			LongAdder[] counts) {
+		for (int i = 0; i <= bounds.length; i++) {
+			int upTo = i;
+			FunctionCounter.builder(name, counts, c -> {
+				long sum = 0;
+				for (int j = 0; j <= upTo; j++) {
+					sum += c[j].sum();
+				}
+				return sum;
+			}).tag("le", i < bounds.length ? Integer.toString(bounds[i]) : "+Inf").description(description)
+					.register(registry);
+		}
+	}
+
+	/**
+	 * 本次 transform 是否记录耗时
+	 */
+	boolean sampleLatency() {
+		return bound && (latencySampleRate == 1 || ThreadLocalRandom.current().nextInt(latencySampleRate) == 0);
+	}
+
+	/**
+	 * 每次 transform 调用一次
+	 * @param hitCount 结果所用匹配的匹配数（去重后），小于 0（结果来自缓存）时不计入
+	 */
+	void record(CpcaSeg cpcaSeg, CharSequence location, int hitCount, long startNanos) {
+		CpcaOutcome outcome = cpcaSeg.getOutcome();
+		if (outcome != null) {
+			outcomes[outcome.ordinal()].increment();
+		}
+		lengths[bucket(LENGTH_BUCKETS, location == null ? 0 : location.length())].increment();
+		if (hitCount >= 0) {
+			hits[bucket(HIT_BUCKETS, hitCount)].increment();
+		}
+		if (startNanos != 0) {
+			latency.record(System.nanoTime() - startNanos);
+		}
+	}
+
+	/**
+	 * outcome 的累计次数
+	 * @param outcome
+	 * @return
+	 */
+	public long count(CpcaOutcome outcome) {
+		return outcomes[outcome.ordinal()].sum();
+	}
+
+	/**
+	 * 最近 1~2 分钟抽样耗时的分位数
+	 * @param percentile 如 0.99
+	 * @return 纳秒，没有样本时为 0
+	 */
+	public double latencyPercentile(double percentile) {
+		return latency.percentile(percentile);
+	}
+
+	private static int bucket(int[] bounds, int value) {
+		for (int i = 0; i < bounds.length; i++) {
+			if (value <= bounds[i]) {
+				return i;
+			}
+		}
+		return bounds.length;
+	}
+
+	private static LongAdder[] newAdders(int n) {
+		LongAdder[] adders = new LongAdder[n];
+		for (int i = 0; i < n; i++) {
+			adders[i] = new LongAdder();
+		}
+		return adders;
+	}
+
+	/**
+	 * 对数线性分桶的耗时直方图：每个 2 的幂区间再分 8 个桶，相对误差不超过 12.5%，记录时只累加一个 LongAdder。
+	 * 分位数按最近一次轮换以来的增量计算，读取时每分钟轮换一次，因此覆盖最近 1~2 分钟
+	 */
+	static final class LatencyHistogram {
+		private static final int SUB_BITS = 3;
+		private static final int SUB_BUCKETS = 1 << SUB_BITS;
+		private static final long WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1);
+		private final LongAdder[] buckets = newAdders((64 - SUB_BITS + 1) * SUB_BUCKETS);
+		private final LongAdder count = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		// 上一次、再上一次轮换时各桶的计数
+		private long[] current = new long[buckets.length];
+		private long[] previous = new long[buckets.length];
+		private long rotatedAt = System.nanoTime();
+
+		void record(long nanos) {
+			buckets[index(Math.max(nanos, 0))].increment();
+			count.increment();
+			totalNanos.add(nanos);
+		}
+
+		static int index(long value) {
+			if (value < SUB_BUCKETS) {
+				return (int) value;
+			}
+			int exponent = 63 - Long.numberOfLeadingZeros(value);
+			return (exponent - SUB_BITS + 1) * SUB_BUCKETS + (int) ((value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1));
+		}
+
+		/**
+		 * index 桶的上界
+		 */
+		static long upperBound(int index) {
+			if (index < SUB_BUCKETS) {
+				return index;
+			}
+			int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+			long sub = index % SUB_BUCKETS + SUB_BUCKETS;
+			return ((sub + 1) << (exponent - SUB_BITS)) - 1;
+		}
+
+		long count() {
+			return count.sum();
+		}
+
+		double totalNanos() {
+			return totalNanos.sum();
+		}
+
+		synchronized double percentile(double percentile) {
+			long now = System.nanoTime();
+			long[] counts = new long[buckets.length];
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] = buckets[i].sum();
+			}
+			if (now - rotatedAt >= WINDOW_NANOS) {
+				previous = current;
+				current = counts;
+				rotatedAt = now;
+			}
+			long total = 0;
+			for (int i = 0; i < counts.length; i++) {
+				total += counts[i] - previous[i];
+			}
+			if (total == 0) {
+				return 0;
+			}
+			long rank = (long) Math.ceil(percentile * total);
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i] - previous[i];
+				if (seen >= Math.max(rank, 1)) {
+					return upperBound(i);
+				}
+			}
+			return upperBound(counts.length - 1);
+		}
+	}
+}
@@ -0,0 +1,199 @@
+package org.han.cpca;
+
+
+import com.google.common.base.Preconditions;
+
+/**
+ * transform 前的输入规范化：按逐字的映射表把全角字符转为半角（如 １２号、ＡＢ座），繁体字转为简体字（如 廣東省、臺灣），
+ * 并去掉空白和标点（如 浙江省 ，杭州市）。映射表在构建时生成（每个 char 一项），规范化时逐字查表，一遍完成。
+ * 规范化后的每个字记录其在原地址中的位置，结果中的位置和 address 按原地址给出。
+ * 不需要改动的地址不生成任何对象
+ *
+ * 构建后只读，可以在多个线程间共享
+ *
+ */
+public final class CpcaNormalizer {
+	// 繁体字和对应的简体字，只收录区划名称中用到的简体字对应的繁体字；繁体字本身都不出现在区划名称中
+	static final String TRADITIONAL = "亞來倫兒內冊則勝匯區吳呂單圍園圖團墊壇壩壯壽夢夾婁孫寧審寬寶將尋岡峯島峽崑崗嵐嶗" +
+			"嶧嶺嶽巒巖師帶幹庫廈廠廣廬張彌彙彥後從徵慶懷戶揚撫晉暉曆會東棗楊榮樂樓樹樺橋權欒" +
+			"欽歷歸涼淶渦湯溝溫滄滎滙滿漢潛潤潯澗澤濟濰濱瀋瀏瀘瀾灘灣灤烏無煙燈營爐爾猶獅獨獲" +
+			"琿瑪環瓊甌畢當盤盧碩確礦禪禮穀積競節範簡紅納細紹結綏經綠維綿縣織羅義習聖聞聯肅膠" +
+			"臘臨臺興舊荊莊華萊萬葉蒼蓋蓮蕪薊薩藍蘆蘇蘭衛衝複觀訥許詔誌調諸諾謀謝讓豐貝貢貴賀" +
+			"資賈賓賢贊贛趙車軍載輝輪轄農連進運達遜遠遷遼邁邊郟郵鄆鄉鄒鄖鄧鄭鄰鄲鉛銀銅鋼錦錫" +
+			"鍾鎮鏡鐘鐵長門開閔閘閣閩閬關陝陰陳陸陽隨隴雙雜雞離雲電靈靜鞏韓響頂項順頗頭額類風" +
+			"餘館饒馬駐騰驛髙鬆魚魯鮮鯉鳩鳳鳴鴨鶏鶴鷹鹹鹽麗麥黃點齊龍";
+	static final String SIMPLIFIED = "亚来伦儿内册则胜汇区吴吕单围园图团垫坛坝壮寿梦夹娄孙宁审宽宝将寻冈峰岛峡昆岗岚崂" +
+			"峄岭岳峦岩师带干库厦厂广庐张弥汇彦后从征庆怀户扬抚晋晖历会东枣杨荣乐楼树桦桥权栾" +
+			"钦历归凉涞涡汤沟温沧荥汇满汉潜润浔涧泽济潍滨沈浏泸澜滩湾滦乌无烟灯营炉尔犹狮独获" +
+			"珲玛环琼瓯毕当盘卢硕确矿禅礼谷积竞节范简红纳细绍结绥经绿维绵县织罗义习圣闻联肃胶" +
+			"腊临台兴旧荆庄华莱万叶苍盖莲芜蓟萨蓝芦苏兰卫冲复观讷许诏志调诸诺谋谢让丰贝贡贵贺" +
+			"资贾宾贤赞赣赵车军载辉轮辖农连进运达逊远迁辽迈边郏邮郓乡邹郧邓郑邻郸铅银铜钢锦锡" +
+			"钟镇镜钟铁长门开闵闸阁闽阆关陕阴陈陆阳随陇双杂鸡离云电灵静巩韩响顶项顺颇头额类风" +
+			"余馆饶马驻腾驿高松鱼鲁鲜鲤鸠凤鸣鸭鸡鹤鹰咸盐丽麦黄点齐龙";
+	// 去掉的空白以外的标点
+	static final String SEPARATORS = ",，、;；:：·•-—_/|\\\"'“”‘’()（）[]【】《》";
+	// 映射表中表示去掉该字
+	private static final char DROP = '\uFFFF';
+	private static final CpcaNormalizer DEFAULTS = builder().withDefaults().build();
+
+	private final char[] table;
+
+	private CpcaNormalizer(Builder builder) {
+		this.table = builder.table.clone();
+	}
+
+	/**
+	 * 默认规则：全角转半角、繁体转简体、去掉空白和标点
+	 * @return
+	 */
+	public static CpcaNormalizer defaults() {
+		return DEFAULTS;
+	}
+
+	/**
+	 * 不做任何改动的 Builder，需要在默认规则上增加时先调用 withDefaults()
+	 * @return
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * 规范化后的地址，不需要改动时返回 location 本身
+	 * @param location
+	 * @return
+	 */
+	public String normalize(String location) {
+		Normalized normalized = location == null ? null : normalizeWithOffsets(location);
+		return normalized == null ? location : normalized.text;
+	}
+
+	/**
+	 * 
+	 * @param location
+	 * @return 不需要改动时返回 null
+	 */
+	Normalized normalizeWithOffsets(CharSequence location) {
+		int len = location.length();
+		int from = 0;
+		while (from < len && table[location.charAt(from)] == location.charAt(from)) {
+			from++;
+		}
+		if (from == len) {
+			return null;
+		}
+		char[] chars = new char[len];
+		int[] offsets = new int[len + 1];
+		int count = 0;
+		for (int i = 0; i < len; i++) {
+			char ch = table[location.charAt(i)];
+			if (ch != DROP) {
+				chars[count] = ch;
+				offsets[count++] = i;
+			}
+		}
+		offsets[count] = len;
+		return new Normalized(new String(chars, 0, count), offsets);
+	}
+
+	/**
+	 * 规范化后的地址及每个字在原地址中的位置
+	 */
+	static final class Normalized {
+		final String text;
+		// offsets[i] 为 text 第 i 个字在原地址中的位置，offsets[text.length()] 为原地址长度
+		private final int[] offsets;
+
+		Normalized(String text, int[] offsets) {
+			this.text = text;
+			this.offsets = offsets;
+		}
+
+		/**
+		 * text 中的开始位置对应的原地址位置
+		 */
+		int begin(int index) {
+			return offsets[index];
+		}
+
+		/**
+		 * text 中的结束位置（不含）对应的原地址位置，不含其后去掉的字
+		 */
+		int end(int index) {
+			return index == 0 ? offsets[0] : offsets[index - 1] + 1;
+		}
+	}
+
+	public static class Builder {
+		private final char[] table = new char[Character.MAX_VALUE + 1];
+
+		private Builder() {
+			for (int i = 0; i < table.length; i++) {
+				table[i] = (char) i;
+			}
+		}
+
+		/**
+		 * 加入默认规则：全角转半角、繁体转简体、去掉空白和标点
+		 * @return
+		 */
+		public Builder withDefaults() {
+			withFullWidth();
+			withMapping(TRADITIONAL, SIMPLIFIED);
+			for (char ch = 0; ch <= ' '; ch++) {
+				withDropped(String.valueOf(ch));
+			}
+			// 全角空格、不换行空格
+			withDropped("\u3000\u00A0");
+			return withDropped(SEPARATORS);
+		}
+
+		/**
+		 * 全角字母、数字、标点（！ ~ ～）转为对应的半角字符
+		 * @return
+		 */
+		public Builder withFullWidth() {
+			for (char ch = '\uFF01'; ch <= '\uFF5E'; ch++) {
+				table[ch] = (char) (ch - 0xFEE0);
+			}
+			return this;
+		}
+
+		/**
+		 * from 中的每个字转为 to 中相同位置的字
+		 * @param from
+		 * @param to 和 from 长度相同
+		 * @return
+		 */
+		public Builder withMapping(String from, String to) {
+			Preconditions.checkArgument(from.length() == to.length(), "from和to的长度不一致");
+			for (int i = 0; i < from.length(); i++) {
+				Preconditions.checkArgument(to.charAt(i) != DROP, "不能映射为\\uFFFF");
+				table[from.charAt(i)] = to.charAt(i);
+			}
+			return this;
+		}
+
+		/**
+		 * 去掉这些字，已映射为这些字的（如全角逗号转为半角逗号后）同样去掉
+		 * @param chars
+		 * @return
+		 */
+		public Builder withDropped(String chars) {
+			for (int i = 0; i < chars.length(); i++) {
+				char ch = chars.charAt(i);
+				table[ch] = DROP;
+				for (int j = 0; j < table.length; j++) {
+					if (table[j] == ch) {
+						table[j] = DROP;
+					}
+				}
+			}
+			return this;
+		}
+
+		public CpcaNormalizer build() {
+			return new CpcaNormalizer(this);
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package org.han.cpca;
+
+/**
+ * transform 结果的分类，见 CpcaSeg.getOutcome
+ *
+ */
+public enum CpcaOutcome {
+	/**
+	 * 匹配到区县（省、市由区县补全）
+	 */
+	FULL,
+	/**
+	 * 匹配到市，没有区县
+	 */
+	CITY_ONLY,
+	/**
+	 * 只匹配到省
+	 */
+	PROVINCE_ONLY,
+	/**
+	 * 没有匹配到任何省、市、区县
+	 */
+	NO_MATCH,
+	/**
+	 * 匹配到的名称后面是镇、路、大厦、村、学校等（如 杭州中学），当作单位名称，未匹配
+	 */
+	UNIT_REJECTED,
+	/**
+	 * 严格匹配时区县存在同名，无法确定是哪一个，未匹配
+	 */
+	AMBIGUOUS;
+
+	static CpcaOutcome of(CpcaSeg cpcaSeg, boolean unitRejected, boolean ambiguous) {
+		if (cpcaSeg.getAreaName() != null) {
+			return FULL;
+		}
+		if (cpcaSeg.getCityName() != null) {
+			return CITY_ONLY;
+		}
+		if (cpcaSeg.getProvinceName() != null) {
+			return PROVINCE_ONLY;
+		}
+		if (unitRejected) {
+			return UNIT_REJECTED;
+		}
+		return ambiguous ? AMBIGUOUS : NO_MATCH;
+	}
+}
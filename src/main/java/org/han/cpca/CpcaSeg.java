@@ -1,14 +1,63 @@
 package org.han.cpca;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
 public class CpcaSeg {
 	private String provinceName;
 	private String cityName;
 	private String areaName;
 	private String cpcaCode;//6位的编码
 	private String address;//不带省、市、县的地址
+	// address 尚未生成时，address 为 addressSource 的 [addressBegin, addressEnd)
+	private CharSequence addressSource;
+	private int addressBegin;
+	private int addressEnd;
 	private CpcaIndex provinceNameIndex;
 	private CpcaIndex cityNameIndex;
 	private CpcaIndex areaNameIndex;
+	private int dictVersion;//得到该结果所用的字典版本
+	private CpcaOutcome outcome;
+	// 乡镇、村，只在设置了 CpcaTownDictionary 时匹配，编码为 12 位
+	private String townName;
+	private String townCode;
+	private String villageName;
+	private String villageCode;
+	private CpcaIndex townNameIndex;
+	private CpcaIndex villageNameIndex;
+	// 模糊匹配时地址开头写错的名称及改正后的名称，如 杭洲市、杭州市
+	private String misspelledName;
+	private String correctedName;
+	public CpcaSeg() {
+	}
+	/**
+	 * 复制 other 的所有字段，位置信息复制成新的对象
+	 * @param other
+	 */
+	CpcaSeg(CpcaSeg other) {
+		this.provinceName = other.provinceName;
+		this.cityName = other.cityName;
+		this.areaName = other.areaName;
+		this.cpcaCode = other.cpcaCode;
+		this.address = other.address;
+		this.addressSource = other.addressSource;
+		this.addressBegin = other.addressBegin;
+		this.addressEnd = other.addressEnd;
+		this.provinceNameIndex = CpcaIndex.copyOf(other.provinceNameIndex);
+		this.cityNameIndex = CpcaIndex.copyOf(other.cityNameIndex);
+		this.areaNameIndex = CpcaIndex.copyOf(other.areaNameIndex);
+		this.dictVersion = other.dictVersion;
+		this.outcome = other.outcome;
+		this.townName = other.townName;
+		this.townCode = other.townCode;
+		this.villageName = other.villageName;
+		this.villageCode = other.villageCode;
+		this.townNameIndex = CpcaIndex.copyOf(other.townNameIndex);
+		this.villageNameIndex = CpcaIndex.copyOf(other.villageNameIndex);
+		this.misspelledName = other.misspelledName;
+		this.correctedName = other.correctedName;
+	}
 	public String getProvinceName() {
 		return provinceName;
 	}
@@ -51,11 +100,157 @@ public class CpcaSeg {
 	public void setAreaNameIndex(CpcaIndex areaNameIndex) {
 		this.areaNameIndex = areaNameIndex;
 	}
+	/**
+	 * transform 得到的结果在第一次调用时才从 location 截取生成
+	 * @return
+	 */
 	public String getAddress() {
+		if (addressSource != null) {
+			address = addressSource.subSequence(addressBegin, addressEnd).toString();
+			addressSource = null;
+		}
 		return address;
 	}
 	public void setAddress(String address) {
 		this.address = address;
+		this.addressSource = null;
+	}
+	/**
+	 * address 为 location 从 begin 开始的部分，到用到时才生成
+	 * @param location
+	 * @param begin
+	 */
+	void setAddress(CharSequence location, int begin) {
+		if (begin == 0 && location instanceof String) {
+			setAddress((String) location);
+			return;
+		}
+		this.address = null;
+		this.addressSource = location;
+		this.addressBegin = begin;
+		this.addressEnd = location.length();
+	}
+	/**
+	 * address 为 String 的 [addressBegin(), length) 时返回该 String，不生成 address；否则返回 getAddress()
+	 * @return
+	 */
+	String addressSource() {
+		if (addressSource instanceof String) {
+			return (String) addressSource;
+		}
+		return getAddress();
+	}
+	/**
+	 * addressSource() 中 address 的开始位置
+	 * @return
+	 */
+	int addressBegin() {
+		return addressSource instanceof String ? addressBegin : 0;
+	}
+	/**
+	 * 得到该结果所用的字典版本，见 CpcaExtractor.reload
+	 * @return
+	 */
+	@JsonIgnore
+	public int getDictVersion() {
+		return dictVersion;
+	}
+	void setDictVersion(int dictVersion) {
+		this.dictVersion = dictVersion;
+	}
+	/**
+	 * 结果的分类，由 transform 设置，自行创建的 CpcaSeg 为 null
+	 * @return
+	 */
+	@JsonIgnore
+	public CpcaOutcome getOutcome() {
+		return outcome;
+	}
+	void setOutcome(CpcaOutcome outcome) {
+		this.outcome = outcome;
+	}
+	/**
+	 * 乡镇名称，未设置 CpcaTownDictionary 或未匹配到时为 null，JSON 中不输出 null
+	 * @return
+	 */
+	@JsonInclude(Include.NON_NULL)
+	public String getTownName() {
+		return townName;
+	}
+	public void setTownName(String townName) {
+		this.townName = townName;
+	}
+	/**
+	 * 乡镇的 12 位编码
+	 * @return
+	 */
+	@JsonInclude(Include.NON_NULL)
+	public String getTownCode() {
+		return townCode;
+	}
+	public void setTownCode(String townCode) {
+		this.townCode = townCode;
+	}
+	@JsonInclude(Include.NON_NULL)
+	public String getVillageName() {
+		return villageName;
+	}
+	public void setVillageName(String villageName) {
+		this.villageName = villageName;
+	}
+	@JsonInclude(Include.NON_NULL)
+	public String getVillageCode() {
+		return villageCode;
+	}
+	public void setVillageCode(String villageCode) {
+		this.villageCode = villageCode;
+	}
+	@JsonInclude(Include.NON_NULL)
+	public CpcaIndex getTownNameIndex() {
+		return townNameIndex;
+	}
+	public void setTownNameIndex(CpcaIndex townNameIndex) {
+		this.townNameIndex = townNameIndex;
+	}
+	@JsonInclude(Include.NON_NULL)
+	public CpcaIndex getVillageNameIndex() {
+		return villageNameIndex;
+	}
+	public void setVillageNameIndex(CpcaIndex villageNameIndex) {
+		this.villageNameIndex = villageNameIndex;
+	}
+	/**
+	 * 开启模糊匹配且精确匹配不到时，地址开头写错的名称（如 杭洲市），位置为 [0, misspelledName.length())；
+	 * 未做改正时为 null，JSON 中不输出 null
+	 * @return
+	 */
+	@JsonInclude(Include.NON_NULL)
+	public String getMisspelledName() {
+		return misspelledName;
+	}
+	public void setMisspelledName(String misspelledName) {
+		this.misspelledName = misspelledName;
+	}
+	/**
+	 * misspelledName 改正后的名称（如 杭州市），结果按改正后的名称匹配
+	 * @return
+	 */
+	@JsonInclude(Include.NON_NULL)
+	public String getCorrectedName() {
+		return correctedName;
+	}
+	public void setCorrectedName(String correctedName) {
+		this.correctedName = correctedName;
+	}
+	/**
+	 * address 的长度，address 为 null 时返回 -1，不生成 address
+	 * @return
+	 */
+	int addressLength() {
+		if (addressSource != null) {
+			return addressEnd - addressBegin;
+		}
+		return address == null ? -1 : address.length();
 	}
 	/**
 	 * 地址是否包含省、市、区至少一处信息
@@ -89,11 +284,39 @@ public class CpcaSeg {
 		return this.areaNameIndex != null; 
 	}
 	
+	public boolean hasTown() {
+		return this.townNameIndex != null;
+	}
+	
+	public boolean hasVillage() {
+		return this.villageNameIndex != null;
+	}
+	
 	public static CpcaSeg none() {
 		return new CpcaSeg();
 	}
 	
+	/**
+	 * 返回 cpcaSeg 的只读副本，调用 set 方法或 reset 会抛出 UnsupportedOperationException，可以在多个线程间共享
+	 * @param cpcaSeg
+	 * @return
+	 */
+	public static CpcaSeg unmodifiable(CpcaSeg cpcaSeg) {
+		return cpcaSeg instanceof UnmodifiableCpcaSeg ? cpcaSeg : new UnmodifiableCpcaSeg(cpcaSeg);
+	}
+	
+	/**
+	 * 可修改的副本，只读结果（如缓存命中返回的结果）需要修改时使用
+	 * @return
+	 */
+	public CpcaSeg copy() {
+		return new CpcaSeg(this);
+	}
+	
 	public boolean hasAddress() {
+		if (addressSource != null) {
+			return addressEnd > addressBegin;
+		}
 		return this.address != null && !this.address.equals("");
 	}
 	
@@ -106,6 +329,102 @@ public class CpcaSeg {
 		setProvinceNameIndex(null);
 		setCityNameIndex(null);
 		setAreaNameIndex(null);
+		setTownName(null);
+		setTownCode(null);
+		setVillageName(null);
+		setVillageCode(null);
+		setTownNameIndex(null);
+		setVillageNameIndex(null);
+		setMisspelledName(null);
+		setCorrectedName(null);
+	}
+}
+
+final class UnmodifiableCpcaSeg extends CpcaSeg {
+	UnmodifiableCpcaSeg(CpcaSeg cpcaSeg) {
+		super(cpcaSeg);
+		// 可能在多个线程间共享，address 立即生成
+		super.getAddress();
+	}
+	@Override
+	public void setProvinceName(String provinceName) {
+		throw new UnsupportedOperationException();
+	}
+	@Override
+	public void setCityName(String cityName) {
+		throw new UnsupportedOperationException();
+	}
+	@Override
+	public void setAreaName(String areaName) {
+		throw new UnsupportedOperationException();
+	}
+	@Override
+	public void setCpcaCode(String cpcaCode) {
+		throw new UnsupportedOperationException();
+	}
+	@Override
+	public void setProvinceNameIndex(CpcaIndex provinceNameIndex) {
+		throw new UnsupportedOperationException();
+	}
+	@Override
+	public void setCityNameIndex(CpcaIndex cityNameIndex) {
+		throw new UnsupportedOperationException();
+	}
+	@Override
+	public void setAreaNameIndex(CpcaIndex areaNameIndex) {
+		throw new UnsupportedOperationException();
+	}
+	@Override
+	public void setTownName(String townName) {
+		throw new UnsupportedOperationException();
+	}
+	@Override
+	public void setTownCode(String townCode) {
+		throw new UnsupportedOperationException();
+	}
+	@Override
+	public void setVillageName(String villageName) {
+		throw new UnsupportedOperationException();
+	}
+	@Override
+	public void setVillageCode(String villageCode) {
+		throw new UnsupportedOperationException();
+	}
+	@Override
+	public void setTownNameIndex(CpcaIndex townNameIndex) {
+		throw new UnsupportedOperationException();
+	}
+	@Override
+	public void setVillageNameIndex(CpcaIndex villageNameIndex) {
+		throw new UnsupportedOperationException();
+	}
+	@Override
+	public void setMisspelledName(String misspelledName) {
+		throw new UnsupportedOperationException();
+	}
+	@Override
+	public void setCorrectedName(String correctedName) {
+		throw new UnsupportedOperationException();
+	}
+	@Override
+	public void setAddress(String address) {
+		throw new UnsupportedOperationException();
+	}
+	@Override
+	void setAddress(CharSequence location, int begin) {
+		throw new UnsupportedOperationException();
+	}
+	@Override
+	void setDictVersion(int dictVersion) {
+		throw new UnsupportedOperationException();
+	}
+	@Override
+	void setOutcome(CpcaOutcome outcome) {
+		throw new UnsupportedOperationException();
+	}
+	@Override
+	public void reset() {
+		throw new UnsupportedOperationException();
 	}
 }
 
@@ -119,6 +438,10 @@ class CpcaIndex {
 		this.endIndex = endIndex;
 	}
 	
+	static CpcaIndex copyOf(CpcaIndex cpcaIndex) {
+		return cpcaIndex == null ? null : new CpcaIndex(cpcaIndex.beginIndex, cpcaIndex.endIndex);
+	}
+	
 	public Integer getBeginIndex() {
 		return beginIndex;
 	}
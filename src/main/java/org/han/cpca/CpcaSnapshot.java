@@ -0,0 +1,143 @@
+package org.han.cpca;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.han.cpca.CpcaExtractorImpl.AddressInfo;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * cpca 字典的二进制快照，保存地址记录（编码、名称）和构建好的自动机数组，加载时不再解析 CSV、构建自动机
+ *
+ * 格式：magic(4) 版本(4) 数据长度(4) 数据的 CRC32(4) 数据；
+ * 数据：记录数(4)，每条记录为 6 位编码(4)、经度(8)、纬度(8)（没有时为 NaN）、名称长度(2)、名称(UTF-8)，之后是自动机数组（见 CpcaTrie.writeTo）
+ *
+ */
+public final class CpcaSnapshot {
+	static final int MAGIC = 0x43504341;// "CPCA"
+	// 格式或匹配名生成规则（如 simplifyName）变化时加 1
+	static final int VERSION = 2;
+	private static final int HEADER_SIZE = 16;
+
+	private CpcaSnapshot() {
+	}
+
+	/**
+	 * 读取 cpcaCvsFile 生成快照文件
+	 * @param cpcaCvsFile
+	 * @param snapshotFile
+	 * @throws IOException
+	 */
+	public static void write(String cpcaCvsFile, Path snapshotFile) throws IOException {
+		new CpcaExtractorImpl(cpcaCvsFile).writeSnapshot(snapshotFile);
+	}
+
+	static void write(List<AddressInfo> addressInfos, CpcaTrie<?> trie, Path snapshotFile) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024 * 1024);
+		DataOutputStream data = new DataOutputStream(bytes);
+		data.writeInt(addressInfos.size());
+		for (AddressInfo addressInfo : addressInfos) {
+			byte[] name = addressInfo.getName().getBytes(StandardCharsets.UTF_8);
+			data.writeInt(addressInfo.getCode());
+			data.writeDouble(addressInfo.getLongitude());
+			data.writeDouble(addressInfo.getLatitude());
+			data.writeShort(name.length);
+			data.write(name);
+		}
+		trie.writeTo(data);
+		data.flush();
+		byte[] payload = bytes.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		Path parent = snapshotFile.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		try (OutputStream out = Files.newOutputStream(snapshotFile)) {
+			DataOutputStream header = new DataOutputStream(out);
+			header.writeInt(MAGIC);
+			header.writeInt(VERSION);
+			header.writeInt(payload.length);
+			header.writeInt((int) crc.getValue());
+			header.write(payload);
+			header.flush();
+		}
+	}
+
+	/**
+	 * 内存映射快照文件并校验
+	 * @param snapshotFile
+	 * @return 数据部分
+	 * @throws IOException 文件不存在、版本不一致或校验失败
+	 */
+	static ByteBuffer map(Path snapshotFile) throws IOException {
+		try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+			return verify(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * 读取快照（如 jar 中的资源，无法内存映射）并校验
+	 * @param in
+	 * @return 数据部分
+	 * @throws IOException
+	 */
+	static ByteBuffer read(InputStream in) throws IOException {
+		return verify(ByteBuffer.wrap(ByteStreams.toByteArray(in)));
+	}
+
+	private static ByteBuffer verify(ByteBuffer buffer) throws IOException {
+		if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+			throw new IOException("不是 cpca 快照文件");
+		}
+		int version = buffer.getInt();
+		if (version != VERSION) {
+			throw new IOException("快照版本 " + version + " 和当前版本 " + VERSION + " 不一致");
+		}
+		int length = buffer.getInt();
+		int checksum = buffer.getInt();
+		if (length < 0 || length != buffer.remaining()) {
+			throw new IOException("快照文件不完整");
+		}
+		ByteBuffer data = buffer.slice();
+		CRC32 crc = new CRC32();
+		crc.update(data.duplicate());
+		if ((int) crc.getValue() != checksum) {
+			throw new IOException("快照文件校验失败");
+		}
+		return data;
+	}
+
+	static String readName(ByteBuffer data) {
+		byte[] name = new byte[data.getShort() & 0xffff];
+		data.get(name);
+		return new String(name, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * 用法：CpcaSnapshot CSV文件 快照文件
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("usage: CpcaSnapshot <cpcaCvsFile> <snapshotFile>");
+			System.exit(1);
+		}
+		write(args[0], Paths.get(args[1]));
+	}
+}
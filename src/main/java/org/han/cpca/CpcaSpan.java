@@ -0,0 +1,71 @@
+package org.han.cpca;
+
+/**
+ * scan 在长文本中找到的一处省、市、区：[begin, end) 为省、市、区名称在整个文本中的位置（不含后面的详细地址），
+ * 名称、编码和 transform 对这一段文本的结果相同
+ *
+ */
+public final class CpcaSpan {
+	private final long begin;
+	private final long end;
+	private final String text;
+	private final String provinceName;
+	private final String cityName;
+	private final String areaName;
+	private final String cpcaCode;
+
+	CpcaSpan(long begin, String text, CpcaSeg cpcaSeg) {
+		this.begin = begin;
+		this.end = begin + text.length();
+		this.text = text;
+		this.provinceName = cpcaSeg.getProvinceName();
+		this.cityName = cpcaSeg.getCityName();
+		this.areaName = cpcaSeg.getAreaName();
+		this.cpcaCode = cpcaSeg.getCpcaCode();
+	}
+
+	/**
+	 * 在整个文本中的开始位置
+	 * @return
+	 */
+	public long getBegin() {
+		return begin;
+	}
+
+	/**
+	 * 在整个文本中的结束位置（不含）
+	 * @return
+	 */
+	public long getEnd() {
+		return end;
+	}
+
+	/**
+	 * 文本中的 [begin, end) 部分，如 浙江省杭州市拱墅区
+	 * @return
+	 */
+	public String getText() {
+		return text;
+	}
+
+	public String getProvinceName() {
+		return provinceName;
+	}
+
+	public String getCityName() {
+		return cityName;
+	}
+
+	public String getAreaName() {
+		return areaName;
+	}
+
+	public String getCpcaCode() {
+		return cpcaCode;
+	}
+
+	@Override
+	public String toString() {
+		return "CpcaSpan [begin=" + begin + ", end=" + end + ", text=" + text + ", cpcaCode=" + cpcaCode + "]";
+	}
+}
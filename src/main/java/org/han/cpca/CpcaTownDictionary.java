@@ -0,0 +1,333 @@
+package org.han.cpca;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * 乡镇、村字典，可选，transform 匹配到区县后在区县之后的地址中查找该区县下的乡镇，再在乡镇之后查找该乡镇下的村。
+ * 文件格式和 adcodes.csv 相同（adcode,name,longitude,latitude，第一行为表头），adcode 为 12 位统计用区划代码，
+ * 6 位以上的记录（省、市、区县）忽略，可以直接使用包含全部 5 级的文件
+ *
+ * 全国约 4 万个乡镇、60 万个村，不建 AhoCorasick 自动机，也不为每条记录创建对象：
+ * 记录按编码排序后保存在 long[]、int[] 中，一个区县的乡镇、一个乡镇的村在数组中连续；
+ * 名称去重后放在同一个 char[] 中，按下标引用。4 万个乡镇、60 万个村约占 15MB（每条记录 20 字节，另加去重后的名称）
+ *
+ * 加载后只读，可以在多个线程间共享
+ *
+ */
+public final class CpcaTownDictionary {
+	private final static Logger logger = LoggerFactory.getLogger(CpcaTownDictionary.class);
+	// 12 位编码中区县以下的部分
+	private static final long COUNTY_DIVISOR = 1000000L;
+	// 12 位编码中乡镇以下的部分
+	private static final long TOWN_DIVISOR = 1000L;
+	private static final int CODE_SIZE = 12;
+	// 统计用区划名称常见的后缀和地址中的写法，如 绕城村村委会 写作 绕城村
+	private static final String[][] SIMPLIFY_SUFFIXES = { { "街道办事处", "街道" }, { "村村民委员会", "村" },
+			{ "村民委员会", "村" }, { "村村委会", "村" }, { "村委会", "村" }, { "社区居民委员会", "社区" }, { "居民委员会", "" },
+			{ "居委会", "" } };
+
+	// 按编码排序的 12 位编码
+	private final long[] codes;
+	// 名称和简称在 names 中的下标，没有简称时两者相同
+	private final int[] nameIds;
+	private final int[] aliasIds;
+	// 乡镇：该乡镇最后一个村的下一条记录；村：所属乡镇
+	private final int[] extent;
+	// 去重后的名称，第 i 个名称为 names[nameOffsets[i], nameOffsets[i + 1])
+	private final char[] names;
+	private final int[] nameOffsets;
+	private final int towns;
+
+	private CpcaTownDictionary(long[] codes, int[] nameIds, int[] aliasIds, int[] extent, char[] names,
+			int[] nameOffsets, int towns) {
+		this.codes = codes;
+		this.nameIds = nameIds;
+		this.aliasIds = aliasIds;
+		this.extent = extent;
+		this.names = names;
+		this.nameOffsets = nameOffsets;
+		this.towns = towns;
+	}
+
+	/**
+	 * 从文件加载，文件不存在时从 classpath 加载
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static CpcaTownDictionary load(String file) throws IOException {
+		Preconditions.checkArgument(file != null && !file.isEmpty(), "file不能为空");
+		if (new File(file).isFile()) {
+			try (InputStream in = new FileInputStream(file)) {
+				return load(in);
+			}
+		}
+		try (InputStream in = CpcaTownDictionary.class.getResourceAsStream('/' + file)) {
+			if (in == null) {
+				throw new IOException("File not found: " + file);
+			}
+			return load(in);
+		}
+	}
+
+	/**
+	 * 从 in 加载，不关闭 in
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	public static CpcaTownDictionary load(InputStream in) throws IOException {
+		Loader loader = new Loader();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		// 第一行 adcode,name,longitude,latitude 跳过处理
+		reader.readLine();
+		String line;
+		while ((line = reader.readLine()) != null) {
+			int nameBegin = line.indexOf(',') + 1;
+			if (nameBegin != CODE_SIZE + 1) {
+				continue;
+			}
+			int nameEnd = line.indexOf(',', nameBegin);
+			String name = nameEnd < 0 ? line.substring(nameBegin) : line.substring(nameBegin, nameEnd);
+			long code;
+			try {
+				code = Long.parseLong(line.substring(0, CODE_SIZE));
+			} catch (NumberFormatException e) {
+				continue;
+			}
+			if (code % COUNTY_DIVISOR != 0 && !name.isEmpty()) {
+				loader.add(code, name);
+			}
+		}
+		CpcaTownDictionary dictionary = loader.build();
+		logger.info("乡镇、村字典导入完成，共 {} 个乡镇、{} 个村", dictionary.towns, dictionary.size() - dictionary.towns);
+		return dictionary;
+	}
+
+	/**
+	 * 记录数（乡镇 + 村）
+	 * @return
+	 */
+	public int size() {
+		return codes.length;
+	}
+
+	/**
+	 * 在 location 的 [from, length) 中查找 countyCode 下的乡镇，找到时再在乡镇名称之后查找该乡镇下的村，结果写入 cpcaSeg。
+	 * 同一区县下有多个乡镇出现时取最先出现的，同一位置取名称较长的
+	 * @param cpcaSeg
+	 * @param countyCode 6 位区县编码
+	 * @param location
+	 * @param from
+	 */
+	void match(CpcaSeg cpcaSeg, int countyCode, CharSequence location, int from) {
+		long countyBegin = countyCode * COUNTY_DIVISOR;
+		int first = lowerBound(countyBegin);
+		int last = lowerBound(countyBegin + COUNTY_DIVISOR);
+		int[] found = new int[3];
+		if (!find(location, from, first, last, true, found)) {
+			return;
+		}
+		int town = found[0];
+		cpcaSeg.setTownName(name(nameIds[town]));
+		cpcaSeg.setTownCode(Long.toString(codes[town]));
+		cpcaSeg.setTownNameIndex(new CpcaIndex(found[1], found[2]));
+		if (find(location, found[2], town + 1, extent[town], false, found)) {
+			int village = found[0];
+			cpcaSeg.setVillageName(name(nameIds[village]));
+			cpcaSeg.setVillageCode(Long.toString(codes[village]));
+			cpcaSeg.setVillageNameIndex(new CpcaIndex(found[1], found[2]));
+		}
+	}
+
+	/**
+	 * 在记录 [first, last) 中找最先出现在 location 的 [from, length) 中的乡镇或村
+	 * @param town 找乡镇（跳过各乡镇下的村）还是村
+	 * @param found 找到时依次写入记录下标、名称开始位置、结束位置（不含）
+	 * @return 是否找到
+	 */
+	private boolean find(CharSequence location, int from, int first, int last, boolean town, int[] found) {
+		int bestBegin = Integer.MAX_VALUE;
+		int bestEnd = -1;
+		for (int i = first; i < last; i = town ? extent[i] : i + 1) {
+			for (int nameId = nameIds[i];; nameId = aliasIds[i]) {
+				int begin = indexOf(location, from, nameId);
+				if (begin >= 0) {
+					int end = begin + nameOffsets[nameId + 1] - nameOffsets[nameId];
+					if (begin < bestBegin || (begin == bestBegin && end > bestEnd)) {
+						bestBegin = begin;
+						bestEnd = end;
+						found[0] = i;
+					}
+				}
+				if (nameId == aliasIds[i]) {
+					break;
+				}
+			}
+		}
+		if (bestEnd < 0) {
+			return false;
+		}
+		found[1] = bestBegin;
+		found[2] = bestEnd;
+		return true;
+	}
+
+	/**
+	 * 第 nameId 个名称在 s 中从 from 开始第一次出现的位置，没有时返回 -1
+	 */
+	private int indexOf(CharSequence s, int from, int nameId) {
+		int offset = nameOffsets[nameId];
+		int length = nameOffsets[nameId + 1] - offset;
+		char firstChar = names[offset];
+		for (int i = from, max = s.length() - length; i <= max; i++) {
+			if (s.charAt(i) != firstChar) {
+				continue;
+			}
+			int j = 1;
+			while (j < length && s.charAt(i + j) == names[offset + j]) {
+				j++;
+			}
+			if (j == length) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * 第一个编码不小于 code 的记录
+	 */
+	private int lowerBound(long code) {
+		int low = 0;
+		int high = codes.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (codes[mid] < code) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private String name(int nameId) {
+		return new String(names, nameOffsets[nameId], nameOffsets[nameId + 1] - nameOffsets[nameId]);
+	}
+
+	/**
+	 * 地址中常见的写法，如 绕城村村委会 为 绕城村；不足 2 个字时不简写
+	 * @param name
+	 * @return
+	 */
+	static String simplifyName(String name) {
+		for (String[] suffix : SIMPLIFY_SUFFIXES) {
+			if (name.endsWith(suffix[0]) && name.length() - suffix[0].length() + suffix[1].length() >= 2) {
+				return name.substring(0, name.length() - suffix[0].length()) + suffix[1];
+			}
+		}
+		return name;
+	}
+
+	/**
+	 * 加载时使用，按编码排序、去掉重复编码和没有所属乡镇的村后生成数组
+	 */
+	private static final class Loader {
+		// 排序用的 key：编码左移 ORDER_BITS 位加上加载顺序，12 位编码小于 2^40，两者合起来不超过 long
+		private static final int ORDER_BITS = 23;
+		private long[] keys = new long[1024];
+		private int[] nameIds = new int[1024];
+		private int size;
+		private final Map<String, Integer> nameIndex = new HashMap<>();
+		private final List<String> nameList = new ArrayList<>();
+
+		private int nameId(String name) {
+			Integer id = nameIndex.get(name);
+			if (id == null) {
+				id = nameList.size();
+				nameIndex.put(name, id);
+				nameList.add(name);
+			}
+			return id;
+		}
+
+		void add(long code, String name) {
+			Preconditions.checkState(size < (1 << ORDER_BITS), "记录过多");
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, size * 2);
+				nameIds = Arrays.copyOf(nameIds, size * 2);
+			}
+			keys[size] = (code << ORDER_BITS) | size;
+			nameIds[size] = nameId(name);
+			size++;
+		}
+
+		CpcaTownDictionary build() {
+			Arrays.sort(keys, 0, size);
+			long[] codes = new long[size];
+			int[] sortedNameIds = new int[size];
+			int[] extent = new int[size];
+			int count = 0;
+			int town = -1;
+			int towns = 0;
+			for (int i = 0; i < size; i++) {
+				long code = keys[i] >>> ORDER_BITS;
+				if (count > 0 && codes[count - 1] == code) {
+					// 编码重复时取第一条
+					continue;
+				}
+				if (code % TOWN_DIVISOR == 0) {
+					if (town >= 0) {
+						extent[town] = count;
+					}
+					town = count;
+					towns++;
+				} else if (town < 0 || codes[town] / TOWN_DIVISOR != code / TOWN_DIVISOR) {
+					// 没有所属乡镇的村
+					continue;
+				} else {
+					extent[count] = town;
+				}
+				codes[count] = code;
+				sortedNameIds[count] = nameIds[(int) (keys[i] & ((1 << ORDER_BITS) - 1))];
+				count++;
+			}
+			if (town >= 0) {
+				extent[town] = count;
+			}
+			int[] aliasIds = new int[count];
+			for (int i = 0; i < count; i++) {
+				String name = nameList.get(sortedNameIds[i]);
+				String alias = simplifyName(name);
+				aliasIds[i] = alias.equals(name) ? sortedNameIds[i] : nameId(alias);
+			}
+			int[] nameOffsets = new int[nameList.size() + 1];
+			for (int i = 0; i < nameList.size(); i++) {
+				nameOffsets[i + 1] = nameOffsets[i] + nameList.get(i).length();
+			}
+			char[] names = new char[nameOffsets[nameList.size()]];
+			for (int i = 0; i < nameList.size(); i++) {
+				nameList.get(i).getChars(0, nameList.get(i).length(), names, nameOffsets[i]);
+			}
+			return new CpcaTownDictionary(Arrays.copyOf(codes, count), Arrays.copyOf(sortedNameIds, count), aliasIds,
+					Arrays.copyOf(extent, count), names, nameOffsets, towns);
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package org.han.cpca;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie;
+
+/**
+ * 构建好的数组可以写出、再直接读入的自动机，读入时省去 build
+ *
+ * @param <V>
+ */
+class CpcaTrie<V> extends AhoCorasickDoubleArrayTrie<V> {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * 写出 size、base、check、fail、output、l，value 由调用方自行保存
+	 * @param out
+	 * @throws IOException
+	 */
+	void writeTo(DataOutputStream out) throws IOException {
+		out.writeInt(size);
+		writeInts(out, base);
+		writeInts(out, check);
+		writeInts(out, fail);
+		out.writeInt(output.length);
+		for (int[] emits : output) {
+			writeInts(out, emits);
+		}
+		writeInts(out, l);
+	}
+
+	/**
+	 * 读入 writeTo 写出的数组
+	 * @param buffer
+	 * @param values 和构建时 Map.values() 顺序一致的 value
+	 * @throws IOException 数据不完整或和 values 不一致
+	 */
+	void readFrom(ByteBuffer buffer, V[] values) throws IOException {
+		int size = buffer.getInt();
+		int[] base = readInts(buffer);
+		int[] check = readInts(buffer);
+		int[] fail = readInts(buffer);
+		int[][] output = new int[checkLength(buffer, buffer.getInt())][];
+		for (int i = 0; i < output.length; i++) {
+			output[i] = readInts(buffer);
+		}
+		int[] l = readInts(buffer);
+		if (base == null || check == null || fail == null || l == null || l.length != values.length) {
+			throw new IOException("自动机数据和字典不一致");
+		}
+		this.size = size;
+		this.base = base;
+		this.check = check;
+		this.fail = fail;
+		this.output = output;
+		this.l = l;
+		this.v = values;
+	}
+
+	/**
+	 * 和本自动机共用数组、只替换 value 的自动机，多个版本的字典按所有版本名称的并集构建一个自动机后各自使用。
+	 * values 中为 null 的是该版本没有的名称，匹配时由调用方跳过（见 HitBuffer）
+	 * @param values 和构建时 Map.values() 顺序一致
+	 * @return
+	 */
+	CpcaTrie<V> withValues(V[] values) {
+		if (values.length != l.length) {
+			throw new IllegalArgumentException("values和自动机不一致");
+		}
+		CpcaTrie<V> trie = new CpcaTrie<>();
+		trie.size = size;
+		trie.base = base;
+		trie.check = check;
+		trie.fail = fail;
+		trie.output = output;
+		trie.l = l;
+		trie.v = values;
+		return trie;
+	}
+
+	/**
+	 * 第 index 个 value 对应的匹配名长度
+	 */
+	int keyLength(int index) {
+		return l[index];
+	}
+
+	private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+		if (values == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(values.length);
+		for (int value : values) {
+			out.writeInt(value);
+		}
+	}
+
+	private static int[] readInts(ByteBuffer buffer) throws IOException {
+		int length = buffer.getInt();
+		if (length < 0) {
+			return null;
+		}
+		int[] values = new int[checkLength(buffer, (long) length * 4) / 4];
+		IntBuffer ints = buffer.asIntBuffer();
+		ints.get(values);
+		buffer.position(buffer.position() + values.length * 4);
+		return values;
+	}
+
+	private static int checkLength(ByteBuffer buffer, long length) throws IOException {
+		if (length < 0 || length > buffer.remaining()) {
+			throw new IOException("自动机数据不完整");
+		}
+		return (int) length;
+	}
+}
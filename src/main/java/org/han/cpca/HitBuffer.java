@@ -0,0 +1,112 @@
+package org.han.cpca;
+
+import org.han.cpca.CpcaExtractorImpl.MatchAddressInfo;
+
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie.IHit;
+
+/**
+ * 自动机匹配结果，每次匹配按 begin、end、value 下标、标志位、依赖位置五个 int 连续存放，不生成 Hit 对象
+ * 可在同一线程内重复使用（clear 后再次匹配）
+ *
+ */
+final class HitBuffer implements IHit<MatchAddressInfo> {
+	private static final int DEFAULT_CAPACITY = 16;
+	private static final int STRIDE = 5;
+	private static final int FLAG_FULL_NAME = 1;
+	private static final int FLAG_OPEN_TAIL = 2;
+	private int[] hits;
+	private int size;
+
+	HitBuffer() {
+		this.hits = new int[DEFAULT_CAPACITY * STRIDE];
+	}
+
+	@Override
+	public void hit(int begin, int end, MatchAddressInfo value) {
+		// 多版本共用的自动机中，当前版本没有的名称
+		if (value != null) {
+			add(begin, end, value.getIndex());
+		}
+	}
+
+	void add(int begin, int end, int value) {
+		int pos = size * STRIDE;
+		if (pos == hits.length) {
+			int[] newHits = new int[hits.length * 2];
+			System.arraycopy(hits, 0, newHits, 0, hits.length);
+			hits = newHits;
+		}
+		hits[pos] = begin;
+		hits[pos + 1] = end;
+		hits[pos + 2] = value;
+		hits[pos + 3] = 0;
+		hits[pos + 4] = end;
+		size++;
+	}
+
+	/**
+	 * 把第 from 个匹配复制到第 to 个位置
+	 */
+	void move(int from, int to) {
+		if (from != to) {
+			System.arraycopy(hits, from * STRIDE, hits, to * STRIDE, STRIDE);
+		}
+	}
+
+	void truncate(int size) {
+		this.size = size;
+	}
+
+	void clear() {
+		this.size = 0;
+	}
+
+	int size() {
+		return size;
+	}
+
+	int begin(int i) {
+		return hits[i * STRIDE];
+	}
+
+	int end(int i) {
+		return hits[i * STRIDE + 1];
+	}
+
+	int value(int i) {
+		return hits[i * STRIDE + 2];
+	}
+
+	/**
+	 * 标记第 i 个匹配为全称匹配（如 杭州 之后又匹配到 杭州市）
+	 */
+	void setFullName(int i) {
+		hits[i * STRIDE + 3] |= FLAG_FULL_NAME;
+	}
+
+	boolean isFullName(int i) {
+		return (hits[i * STRIDE + 3] & FLAG_FULL_NAME) != 0;
+	}
+
+	/**
+	 * 去重后第 i 个匹配依赖的原始匹配（去重时向后看的匹配）中最大的 end
+	 */
+	void setDependEnd(int i, int end) {
+		hits[i * STRIDE + 4] = end;
+	}
+
+	int dependEnd(int i) {
+		return hits[i * STRIDE + 4];
+	}
+
+	/**
+	 * 标记第 i 个匹配去重时后面不足两个匹配，后续内容再出现同名匹配会改变去重结果
+	 */
+	void setOpenTail(int i) {
+		hits[i * STRIDE + 3] |= FLAG_OPEN_TAIL;
+	}
+
+	boolean isOpenTail(int i) {
+		return (hits[i * STRIDE + 3] & FLAG_OPEN_TAIL) != 0;
+	}
+}
@@ -0,0 +1,133 @@
+package org.han.cpca;
+
+/**
+ * 一次 transform 的匹配状态，只在调用线程内使用，字典（MatchAddressInfo 等）本身不保存任何匹配状态
+ *
+ * 同时记录结果依赖了 location 的哪些部分，前缀缓存据此判断结果能否用于相同开头的其他地址
+ *
+ */
+final class MatchContext {
+	final HitBuffer hits = new HitBuffer();
+	// 处理过的匹配数（去重后）
+	int consumed;
+	// 处理完所有匹配才得出结果，后续内容再出现任何匹配都可能改变结果
+	boolean exhausted;
+	// isUnit、isArea 等向后读取到的位置（不含），可能超过 location 长度
+	int readEnd;
+	AddressRule addressRule;
+	int addressFrom;
+	// 有名称因后面是单位（isUnit）被放弃
+	boolean unitRejected;
+	// 严格匹配时有同名区县无法确定
+	boolean ambiguous;
+	// 最近一次匹配的匹配数（去重后），模糊匹配后为所采用的匹配的；由 transform 在开始时置为 -1，结果来自缓存时保持 -1
+	int keptHits = -1;
+	// 前缀缓存查找时复用的 key
+	final PrefixCache.PrefixKey probe = new PrefixCache.PrefixKey();
+	// 不为 null 时每次匹配复用同一个结果及省、市、区位置对象，结果只能在下次匹配前读取（见 transformColumns）
+	private final CpcaSeg reusedSeg;
+	private final CpcaIndex[] reusedIndexes;
+
+	MatchContext() {
+		this(false);
+	}
+
+	/**
+	 *
+	 * @param reuseResult 是否复用结果对象
+	 */
+	MatchContext(boolean reuseResult) {
+		this.reusedSeg = reuseResult ? new CpcaSeg() : null;
+		this.reusedIndexes = reuseResult ? new CpcaIndex[] { new CpcaIndex(), new CpcaIndex(), new CpcaIndex() }
+				: null;
+	}
+
+	boolean reusesResult() {
+		return reusedSeg != null;
+	}
+
+	void reset() {
+		hits.clear();
+		consumed = 0;
+		exhausted = false;
+		readEnd = 0;
+		addressRule = null;
+		addressFrom = 0;
+		unitRejected = false;
+		ambiguous = false;
+	}
+
+	/**
+	 * 本次匹配的结果对象
+	 */
+	CpcaSeg newCpcaSeg() {
+		if (reusedSeg == null) {
+			return CpcaSeg.none();
+		}
+		reusedSeg.reset();
+		reusedSeg.setOutcome(null);
+		return reusedSeg;
+	}
+
+	/**
+	 *
+	 * @param level 0、1、2 分别为省、市、区
+	 * @param begin
+	 * @param end
+	 * @return
+	 */
+	CpcaIndex newIndex(int level, int begin, int end) {
+		if (reusedIndexes == null) {
+			return new CpcaIndex(begin, end);
+		}
+		CpcaIndex index = reusedIndexes[level];
+		index.setBeginIndex(begin);
+		index.setEndIndex(end);
+		return index;
+	}
+
+	void read(int end) {
+		if (end > readEnd) {
+			readEnd = end;
+		}
+	}
+
+	/**
+	 * 按 rule 设置 cpcaSeg 的地址并记录下来
+	 */
+	void address(CpcaSeg cpcaSeg, AddressRule rule, CharSequence location, int from) {
+		this.addressRule = rule;
+		this.addressFrom = from;
+		rule.apply(cpcaSeg, location, from);
+	}
+
+	/**
+	 * 结果中的 address 如何从 location 得到，截取的部分到用到时才生成（见 CpcaSeg.getAddress）
+	 */
+	enum AddressRule {
+		WHOLE {
+			@Override
+			void apply(CpcaSeg cpcaSeg, CharSequence location, int from) {
+				cpcaSeg.setAddress(location, 0);
+			}
+		},
+		SUBSTRING {
+			@Override
+			void apply(CpcaSeg cpcaSeg, CharSequence location, int from) {
+				cpcaSeg.setAddress(location, from);
+			}
+		},
+		SUBSTRING_OR_NULL {
+			@Override
+			void apply(CpcaSeg cpcaSeg, CharSequence location, int from) {
+				if (from >= location.length()) {
+					cpcaSeg.setAddress(null);
+				} else {
+					cpcaSeg.setAddress(location, from);
+				}
+			}
+		};
+
+		abstract void apply(CpcaSeg cpcaSeg, CharSequence location, int from);
+	}
+}
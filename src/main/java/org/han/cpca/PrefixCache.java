@@ -0,0 +1,232 @@
+package org.han.cpca;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.han.cpca.CpcaExtractorImpl.CpcaDictionary;
+import org.han.cpca.MatchContext.AddressRule;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * 前缀缓存：transform 的结果只取决于地址开头的省、市、区部分及其后几个字，之后的内容原样作为 address。
+ * 缓存按结果实际依赖的前缀保存，开头相同的地址（如 浙江省杭州市拱墅区祥园路300号、浙江省杭州市拱墅区莫干山路1号）共用一条缓存，
+ * 命中后只需按规则截取 address
+ *
+ * 缓存项同时记录对前缀之后内容的要求：不能再出现某些名称、不能再有任何匹配、或者长度必须相同，命中时先校验
+ *
+ */
+final class PrefixCache {
+	// 只缓存依赖的前缀不超过该长度的结果，查找时按出现过的前缀长度逐个尝试
+	static final int MAX_PREFIX_LENGTH = 63;
+	private static final String[] NO_NAMES = new String[0];
+	private final Cache<PrefixKey, PrefixDecision> cache;
+	// 已缓存的前缀长度，按位表示
+	private final AtomicLong prefixLengths = new AtomicLong();
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+
+	PrefixCache(long maximumSize) {
+		this.cache = Caffeine.newBuilder().maximumSize(maximumSize).recordStats().build();
+	}
+
+	/**
+	 *
+	 * @param dict 本次 transform 使用的字典，其他版本字典的缓存项不会命中
+	 * @param location
+	 * @param umap
+	 * @param strictlyMatch
+	 * @param ctx
+	 * @return 命中时返回新生成的结果，否则返回 null
+	 */
+	CpcaSeg get(CpcaDictionary dict, CharSequence location, Map<String, String> umap, boolean strictlyMatch,
+			MatchContext ctx) {
+		ConcurrentMap<PrefixKey, PrefixDecision> map = cache.asMap();
+		long lengths = prefixLengths.get();
+		int max = Math.min(location.length(), MAX_PREFIX_LENGTH);
+		int hash = 0;
+		for (int length = 1; length <= max && (lengths >>> length) != 0; length++) {
+			hash = 31 * hash + location.charAt(length - 1);
+			if ((lengths & (1L << length)) == 0) {
+				continue;
+			}
+			PrefixDecision decision = map.get(ctx.probe.set(location, length, hash, umap, strictlyMatch));
+			if (decision != null && decision.accept(location, dict)) {
+				hitCount.increment();
+				return decision.apply(location);
+			}
+		}
+		missCount.increment();
+		return null;
+	}
+
+	/**
+	 * 根据 ctx 中记录的依赖范围缓存 transform 的结果
+	 * @param dict
+	 * @param location
+	 * @param umap
+	 * @param strictlyMatch
+	 * @param ctx 刚完成 transform 的匹配状态
+	 * @param cpcaSeg transform 的结果
+	 */
+	void put(CpcaDictionary dict, CharSequence location, Map<String, String> umap, boolean strictlyMatch, MatchContext ctx,
+			CpcaSeg cpcaSeg) {
+		if (ctx.consumed == 0 || ctx.addressRule == null) {
+			// 没有任何匹配，结果依赖整个地址
+			return;
+		}
+		HitBuffer hits = ctx.hits;
+		int length = ctx.readEnd;
+		for (int i = 0; i < ctx.consumed; i++) {
+			length = Math.max(length, hits.dependEnd(i));
+		}
+		// 向后读取时超出了地址长度，结果和地址长度有关
+		boolean exactLength = length > location.length();
+		if (exactLength) {
+			length = location.length();
+		}
+		if (length > MAX_PREFIX_LENGTH) {
+			return;
+		}
+		String[] absentNames = NO_NAMES;
+		if (!exactLength && !ctx.exhausted) {
+			for (int i = 0; i < ctx.consumed; i++) {
+				if (hits.isOpenTail(i)) {
+					String[] aliases = dict.acdat.get(hits.value(i)).getAliases();
+					String[] names = new String[absentNames.length + aliases.length];
+					System.arraycopy(absentNames, 0, names, 0, absentNames.length);
+					System.arraycopy(aliases, 0, names, absentNames.length, aliases.length);
+					absentNames = names;
+				}
+			}
+		}
+		PrefixDecision decision = new PrefixDecision(dict, length, exactLength, !exactLength && ctx.exhausted,
+				absentNames, CpcaSeg.unmodifiable(cpcaSeg), ctx.addressRule, ctx.addressFrom);
+		cache.put(new PrefixKey().set(location.subSequence(0, length).toString(), length, umap, strictlyMatch), decision);
+		long bit = 1L << length;
+		long lengths;
+		while (((lengths = prefixLengths.get()) & bit) == 0 && !prefixLengths.compareAndSet(lengths, lengths | bit)) {
+			;
+		}
+	}
+
+	/**
+	 * 命中次数、未命中次数、淘汰次数及淘汰的权重
+	 * @return
+	 */
+	CacheStats stats() {
+		CacheStats stats = cache.stats();
+		return new CacheStats(hitCount.sum(), missCount.sum(), 0, 0, 0, stats.evictionCount(), stats.evictionWeight());
+	}
+
+	void cleanUp() {
+		cache.cleanUp();
+	}
+
+	void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	/**
+	 * 前缀 + umap + strictlyMatch，查找时用 location 和前缀长度表示前缀，不生成子串
+	 */
+	static final class PrefixKey {
+		private CharSequence text;
+		private int length;
+		private Map<String, String> umap;
+		private boolean strictlyMatch;
+		private int hash;
+
+		PrefixKey set(String prefix, int length, Map<String, String> umap, boolean strictlyMatch) {
+			return set(prefix, length, prefix.hashCode(), umap, strictlyMatch);
+		}
+
+		/**
+		 *
+		 * @param text
+		 * @param length 前缀长度
+		 * @param prefixHash text 前 length 个字按 String.hashCode 算法得到的 hash
+		 * @param umap
+		 * @param strictlyMatch
+		 * @return
+		 */
+		PrefixKey set(CharSequence text, int length, int prefixHash, Map<String, String> umap, boolean strictlyMatch) {
+			this.text = text;
+			this.length = length;
+			this.umap = umap;
+			this.strictlyMatch = strictlyMatch;
+			this.hash = (prefixHash * 31 + System.identityHashCode(umap)) * 31 + (strictlyMatch ? 1 : 0);
+			return this;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof PrefixKey)) {
+				return false;
+			}
+			PrefixKey other = (PrefixKey) obj;
+			return hash == other.hash && length == other.length && strictlyMatch == other.strictlyMatch
+					&& umap == other.umap && CharSequences.regionEquals(text, other.text, length);
+		}
+	}
+
+	static final class PrefixDecision {
+		private final CpcaDictionary dictionary;
+		private final int length;
+		// 地址长度必须和 length 相同
+		private final boolean exactLength;
+		// 前缀之后不能再有任何匹配
+		private final boolean noMoreMatch;
+		// 前缀之后不能出现的名称
+		private final String[] absentNames;
+		private final CpcaSeg template;
+		private final AddressRule addressRule;
+		private final int addressFrom;
+
+		PrefixDecision(CpcaDictionary dictionary, int length, boolean exactLength, boolean noMoreMatch,
+				String[] absentNames, CpcaSeg template, AddressRule addressRule, int addressFrom) {
+			this.dictionary = dictionary;
+			this.length = length;
+			this.exactLength = exactLength;
+			this.noMoreMatch = noMoreMatch;
+			this.absentNames = absentNames;
+			this.template = template;
+			this.addressRule = addressRule;
+			this.addressFrom = addressFrom;
+		}
+
+		boolean accept(CharSequence location, CpcaDictionary dict) {
+			if (dictionary != dict) {
+				return false;
+			}
+			if (exactLength) {
+				return location.length() == length;
+			}
+			for (String name : absentNames) {
+				// 只查结束位置在 length 之后的
+				if (CharSequences.indexOf(location, name, Math.max(0, length - name.length() + 1)) >= 0) {
+					return false;
+				}
+			}
+			return !noMoreMatch || !dict.hasMatchAfter(location, length);
+		}
+
+		CpcaSeg apply(CharSequence location) {
+			CpcaSeg cpcaSeg = template.copy();
+			addressRule.apply(cpcaSeg, location, addressFrom);
+			return cpcaSeg;
+		}
+	}
+}
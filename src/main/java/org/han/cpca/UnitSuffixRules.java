@@ -0,0 +1,256 @@
+package org.han.cpca;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * 判断匹配到的名称后面是否为单位（镇、道路、大厦、村、学校等），是单位时该名称不当作省、市、区，如 上海路、温州村、杭州中学。
+ * 规则有两种：名称后紧跟的后缀（镇、路、大道、一路、大厦、村），名称后 nearbyWindow 个字以内出现的名称（中学、大学）。
+ *
+ * 两种规则分别编译成一棵字典树，直接在地址上逐字查找，不生成子串；构建后只读，可以在多个线程间共享
+ *
+ */
+public final class UnitSuffixRules {
+	// 镇
+	static final String[] TOWN_SUFFIXES = { "镇", "乡" };
+	// 道路带省或市的
+	static final String[] ROAD_SUFFIXES_2 = { "大路", "大道", "大街", "东路", "南路", "西路", "北路", "东街", "南街", "西街", "北街",
+			"街道", "胡同" };
+	static final String[] ROAD_SUFFIXES_1 = { "路", "街", "道" };
+	// 一路 ~ 十道
+	static final String ROAD_NUMERALS = "一二三四五六七八九十";
+	static final String[] BUILDING_SUFFIXES = { "大厦" };
+	// 村
+	static final String[] VILLAGE_SUFFIXES = { "村", "屯", "庄", "家", "山", "河", "沟", "湾", "坪", "塘", "坝", "岗", "场", "湖",
+			"岭", "堡", "坡", "峪", "岩", "溪", "凼", "岛" };
+	static final String[] SCHOOL_NAMES = { "幼儿园", "小学", "中学", "学院", "大学" };
+	static final int DEFAULT_NEARBY_WINDOW = 6;
+	private static final UnitSuffixRules DEFAULTS = builder().withDefaults().build();
+
+	private final CharTrie suffixes;
+	private final CharTrie nearbyNames;
+	private final int nearbyWindow;
+	private final int reach;
+
+	private UnitSuffixRules(Builder builder) {
+		this.suffixes = new CharTrie(builder.suffixes);
+		this.nearbyNames = new CharTrie(builder.nearbyNames);
+		this.nearbyWindow = builder.nearbyWindow;
+		this.reach = Math.max(suffixes.maxLength, nearbyNames.maxLength == 0 ? 0 : nearbyWindow);
+	}
+
+	/**
+	 * 默认规则
+	 * @return
+	 */
+	public static UnitSuffixRules defaults() {
+		return DEFAULTS;
+	}
+
+	/**
+	 * 不含任何规则的 Builder，需要在默认规则上增加时先调用 withDefaults()
+	 * @return
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * location 中结束于 endIndex 的名称后面是否为单位
+	 * @param location
+	 * @param endIndex 名称的结束位置（不含）
+	 * @return
+	 */
+	boolean isUnit(CharSequence location, int endIndex) {
+		int len = location.length();
+		if (suffixes.matchesAt(location, endIndex, len)) {
+			return true;
+		}
+		int to = Math.min(endIndex + nearbyWindow, len);
+		for (int i = endIndex; i < to; i++) {
+			if (nearbyNames.matchesAt(location, i, to)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * isUnit 最多读取 endIndex 之后几个字
+	 * @return
+	 */
+	int reach() {
+		return reach;
+	}
+
+	public static class Builder {
+		private final List<String> suffixes = new ArrayList<>();
+		private final List<String> nearbyNames = new ArrayList<>();
+		private int nearbyWindow = DEFAULT_NEARBY_WINDOW;
+
+		/**
+		 * 加入默认规则：镇、乡，道路（路、街、大道、一路 ~ 十道 等），大厦，村、庄 等，学校（幼儿园、小学、中学、学院、大学）
+		 * @return
+		 */
+		public Builder withDefaults() {
+			withSuffixes(TOWN_SUFFIXES);
+			withSuffixes(ROAD_SUFFIXES_2);
+			withSuffixes(ROAD_SUFFIXES_1);
+			withNumberedSuffixes(ROAD_NUMERALS, ROAD_SUFFIXES_1);
+			withSuffixes(BUILDING_SUFFIXES);
+			withSuffixes(VILLAGE_SUFFIXES);
+			return withNearbyNames(SCHOOL_NAMES);
+		}
+
+		/**
+		 * 名称后紧跟这些后缀时当作单位
+		 * @param suffixes
+		 * @return
+		 */
+		public Builder withSuffixes(String... suffixes) {
+			for (String suffix : suffixes) {
+				Preconditions.checkArgument(suffix != null && !suffix.isEmpty(), "后缀不能为空");
+				this.suffixes.add(suffix);
+			}
+			return this;
+		}
+
+		/**
+		 * 名称后紧跟 numerals 中任一字再加 suffixes 中的后缀时当作单位，如 一路、三街
+		 * @param numerals
+		 * @param suffixes
+		 * @return
+		 */
+		public Builder withNumberedSuffixes(String numerals, String... suffixes) {
+			for (int i = 0; i < numerals.length(); i++) {
+				for (String suffix : suffixes) {
+					withSuffixes(numerals.charAt(i) + suffix);
+				}
+			}
+			return this;
+		}
+
+		/**
+		 * 名称后 nearbyWindow 个字以内出现这些名称时当作单位
+		 * @param names
+		 * @return
+		 */
+		public Builder withNearbyNames(String... names) {
+			for (String name : names) {
+				Preconditions.checkArgument(name != null && !name.isEmpty(), "名称不能为空");
+				this.nearbyNames.add(name);
+			}
+			return this;
+		}
+
+		/**
+		 * withNearbyNames 的查找范围，默认 6 个字
+		 * @param nearbyWindow
+		 * @return
+		 */
+		public Builder withNearbyWindow(int nearbyWindow) {
+			Preconditions.checkArgument(nearbyWindow > 0, "nearbyWindow必须大于0");
+			this.nearbyWindow = nearbyWindow;
+			return this;
+		}
+
+		public UnitSuffixRules build() {
+			return new UnitSuffixRules(this);
+		}
+	}
+
+	/**
+	 * 只判断是否以某个词开头的字典树。节点的子节点保存在开放寻址的哈希表中，key 为 (节点 << 16) | 字，
+	 * 查找一个字只需计算一次哈希，大多数位置在第一个字就能排除
+	 */
+	static final class CharTrie {
+		private static final int EMPTY = -1;
+		private final int[] keys;
+		private final int[] children;
+		private final int mask;
+		// 节点是否为某个词的结尾
+		private final boolean[] terminal;
+		// 最长的词长度
+		final int maxLength;
+
+		CharTrie(List<String> words) {
+			Map<Integer, Integer> transitions = new HashMap<>();
+			List<Boolean> terminals = new ArrayList<>();
+			terminals.add(false);
+			int maxLength = 0;
+			for (String word : words) {
+				int node = 0;
+				for (int i = 0; i < word.length(); i++) {
+					int key = (node << 16) | word.charAt(i);
+					Integer child = transitions.get(key);
+					if (child == null) {
+						child = terminals.size();
+						Preconditions.checkState(child < (1 << 15), "规则过多");
+						terminals.add(false);
+						transitions.put(key, child);
+					}
+					node = child;
+				}
+				terminals.set(node, true);
+				maxLength = Math.max(maxLength, word.length());
+			}
+			int capacity = Integer.highestOneBit(Math.max(transitions.size(), 4) * 4 - 1) << 1;
+			this.keys = new int[capacity];
+			this.children = new int[capacity];
+			this.mask = capacity - 1;
+			Arrays.fill(keys, EMPTY);
+			for (Map.Entry<Integer, Integer> transition : transitions.entrySet()) {
+				int slot = slot(transition.getKey());
+				while (keys[slot] != EMPTY) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = transition.getKey();
+				children[slot] = transition.getValue();
+			}
+			this.terminal = new boolean[terminals.size()];
+			for (int i = 0; i < terminal.length; i++) {
+				terminal[i] = terminals.get(i);
+			}
+			this.maxLength = maxLength;
+		}
+
+		private int slot(int key) {
+			return ((key * 0x9E3779B9) >>> 16) & mask;
+		}
+
+		private int child(int node, char ch) {
+			int key = (node << 16) | ch;
+			for (int slot = slot(key);; slot = (slot + 1) & mask) {
+				int k = keys[slot];
+				if (k == key) {
+					return children[slot];
+				}
+				if (k == EMPTY) {
+					return EMPTY;
+				}
+			}
+		}
+
+		/**
+		 * s 的 [from, to) 是否以某个词开头
+		 */
+		boolean matchesAt(CharSequence s, int from, int to) {
+			int node = 0;
+			for (int i = from; i < to; i++) {
+				node = child(node, s.charAt(i));
+				if (node == EMPTY) {
+					return false;
+				}
+				if (terminal[node]) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
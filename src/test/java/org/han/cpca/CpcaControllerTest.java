@@ -0,0 +1,76 @@
+package org.han.cpca;
+
+import static org.junit.Assert.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class CpcaControllerTest {
+	MockMvc mockMvc = null;
+	CpcaController controller = null;
+	ObjectMapper objectMapper = new ObjectMapper();
+
+	@Before
+	public void setUp() throws Exception {
+		controller = new CpcaController(new CpcaExtractorImpl("adcodes.csv"), objectMapper);
+		mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+	}
+
+	@Test
+	public void testTransform() throws Exception {
+		mockMvc.perform(get("/cpca/transform").param("location", "浙江省杭州市拱墅区祥园路300号"))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.provinceName").value("浙江省"))
+				.andExpect(jsonPath("$.cityName").value("杭州市")).andExpect(jsonPath("$.areaName").value("拱墅区"))
+				.andExpect(jsonPath("$.cpcaCode").value("330105")).andExpect(jsonPath("$.address").value("祥园路300号"));
+	}
+
+	@Test
+	public void testTransformAll() throws Exception {
+		mockMvc.perform(post("/cpca/transformAll").contentType(MediaType.APPLICATION_JSON)
+				.content("[\"浙江省杭州市拱墅区祥园路300号\",\"上海市徐汇区虹漕路461号\",null]".getBytes(StandardCharsets.UTF_8)))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.length()").value(3))
+				.andExpect(jsonPath("$[0].cpcaCode").value("330105"))
+				.andExpect(jsonPath("$[1].cpcaCode").value("310104"))
+				.andExpect(jsonPath("$[2].provinceName").doesNotExist());
+		controller.setMaxBatchSize(1);
+		mockMvc.perform(post("/cpca/transformAll").contentType(MediaType.APPLICATION_JSON)
+				.content("[\"浙江省\",\"上海市\"]".getBytes(StandardCharsets.UTF_8))).andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void testStream() throws Exception {
+		// 块很小，验证跨块时的输出顺序
+		controller.setStreamBlockSize(2);
+		StringBuilder body = new StringBuilder();
+		for (int i = 0; i < 5; i++) {
+			body.append("\"浙江省杭州市拱墅区祥园路").append(i).append("号\"\n");
+			body.append("上海市徐汇区虹漕路").append(i).append("号\n\n");
+		}
+		String response = mockMvc
+				.perform(post("/cpca/stream").contentType(CpcaController.APPLICATION_NDJSON_VALUE)
+						.content(body.toString().getBytes(StandardCharsets.UTF_8)))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+		String[] lines = response.split("\n");
+		assertEquals(10, lines.length);
+		for (int i = 0; i < 5; i++) {
+			JsonNode zj = objectMapper.readTree(lines[i * 2]);
+			assertEquals("330105", zj.get("cpcaCode").asText());
+			assertEquals("祥园路" + i + "号", zj.get("address").asText());
+			JsonNode sh = objectMapper.readTree(lines[i * 2 + 1]);
+			assertEquals("310104", sh.get("cpcaCode").asText());
+			assertEquals("虹漕路" + i + "号", sh.get("address").asText());
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package org.han.cpca;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * CpcaExtractor.transform 的 JMH 性能测试，覆盖不同形态的地址，按 1..N 线程分别输出吞吐量、延迟分位（p99 等）和内存分配速率
+ *
+ * 运行：mvn -P benchmark test-compile exec:exec
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Dfile.encoding=UTF-8" })
+public class CpcaExtractorBenchmark {
+	/**
+	 * FULL: 省市区全称
+	 * SHORT: 市简称 + 区
+	 * COUNTY_UMAP: 只有区县，通过 umap 指定同名区县
+	 * NO_MATCH: 不包含省市区
+	 * UNIT_REJECT: 匹配到省市后面是道路等单位，当作未匹配处理
+	 */
+	@Param({ "FULL", "SHORT", "COUNTY_UMAP", "NO_MATCH", "UNIT_REJECT" })
+	public String shape;
+
+	private CpcaExtractor cpcaExtractor;
+	private String location;
+	private Map<String, String> umap;
+
+	@Setup
+	public void setUp() {
+		cpcaExtractor = CpcaExtractors.builder().withCpcaCvsFile("adcodes.csv").build();
+		switch (shape) {
+		case "FULL":
+			location = "浙江省杭州市拱墅区祥园路300号";
+			break;
+		case "SHORT":
+			location = "杭州拱墅区祥园路300号";
+			break;
+		case "COUNTY_UMAP":
+			location = "朝阳区汉庭酒店大山子店";
+			umap = new HashMap<>();
+			umap.put("朝阳区", "110105");
+			break;
+		case "NO_MATCH":
+			location = "祥园路300号1幢2单元";
+			break;
+		case "UNIT_REJECT":
+			location = "上海路990号";
+			break;
+		default:
+			throw new IllegalArgumentException(shape);
+		}
+	}
+
+	@Benchmark
+	public CpcaSeg transform() {
+		return umap == null ? cpcaExtractor.transform(location) : cpcaExtractor.transform(location, umap);
+	}
+
+	/**
+	 * 线程数依次为 1、2、4 ... 直到 CPU 核数，参数同 JMH 命令行参数（如 -p shape=FULL）
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions cmdOptions = new CommandLineOptions(args);
+		for (int threads : threadCounts(Runtime.getRuntime().availableProcessors())) {
+			ChainedOptionsBuilder builder = new OptionsBuilder().parent(cmdOptions)
+					.include(CpcaExtractorBenchmark.class.getSimpleName()).threads(threads)
+					.addProfiler(GCProfiler.class);
+			new Runner(builder.build()).run();
+		}
+	}
+
+	static List<Integer> threadCounts(int max) {
+		List<Integer> counts = new ArrayList<>();
+		for (int i = 1; i < max; i *= 2) {
+			counts.add(i);
+		}
+		counts.add(max);
+		return Collections.unmodifiableList(counts);
+	}
+}
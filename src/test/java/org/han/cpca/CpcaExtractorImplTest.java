@@ -2,12 +2,39 @@ package org.han.cpca;
 
 import static org.junit.Assert.*;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
 public class CpcaExtractorImplTest {
 	CpcaExtractorImpl cpcaExtractor = null;
 
@@ -192,4 +219,669 @@ public class CpcaExtractorImplTest {
 		System.out.println(count / Math.max(1, (t2 - t1) / 1000) + "次/秒");
 	}
 
+	/**
+	 * 多线程同时解析简称、全称混合的地址，结果必须和单线程解析一致
+	 * @throws Exception
+	 */
+	@Test
+	public void testConcurrency() throws Exception {
+		String[] locations = { "浙江省杭州市拱墅区祥园路300号", "浙江杭州市拱墅区祥园路300号", "杭州拱墅区祥园路300号", "杭州市第十中学",
+				"杭州市杭州第十中学", "朝阳区朝阳区汉庭酒店大山子店", "上海市上海市徐汇区虹漕路461号58号楼5楼", "吉林省吉林市龙潭区虹漕路461号58号楼5楼",
+				"吉林龙潭区虹漕路461号58号楼5楼", "浙江省路祥园路300号", "上海路990号", "湖北仙桃红旗路100号", "万宁市万宁中学" };
+		Map<String, String> umap = new HashMap<>();
+		umap.put("朝阳区", "110105");
+		String[] expected = new String[locations.length];
+		for (int i = 0; i < locations.length; i++) {
+			expected[i] = cpcaExtractor.encodeJson(cpcaExtractor.transform(locations[i], umap));
+		}
+		int threads = 32;
+		int rounds = 2000;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<Integer>> futures = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			int offset = t;
+			futures.add(executor.submit(() -> {
+				start.await();
+				int mismatches = 0;
+				for (int r = 0; r < rounds; r++) {
+					int i = (r + offset) % locations.length;
+					String json = cpcaExtractor.encodeJson(cpcaExtractor.transform(locations[i], umap));
+					if (!expected[i].equals(json)) {
+						mismatches++;
+					}
+				}
+				return mismatches;
+			}));
+		}
+		start.countDown();
+		int mismatches = 0;
+		for (Future<Integer> future : futures) {
+			mismatches += future.get();
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+		assertEquals(0, mismatches);
+	}
+
+	@Test
+	public void testTransformAll() {
+		String[] samples = { "浙江省杭州市拱墅区祥园路300号", "杭州拱墅区祥园路300号", "朝阳区汉庭酒店大山子店", "上海路990号",
+				"吉林龙潭区虹漕路461号58号楼5楼", "杭州市第十中学", "", null };
+		String[] locations = new String[10000];
+		for (int i = 0; i < locations.length; i++) {
+			locations[i] = samples[i % samples.length];
+		}
+		CpcaSeg[] cpcaSegs = cpcaExtractor.transformAll(locations);
+		assertEquals(locations.length, cpcaSegs.length);
+		for (int i = 0; i < locations.length; i++) {
+			assertEquals(cpcaExtractor.encodeJson(cpcaExtractor.transform(locations[i])),
+					cpcaExtractor.encodeJson(cpcaSegs[i]));
+		}
+		List<CpcaSeg> list = cpcaExtractor.transformAll(Arrays.asList(samples));
+		assertEquals("拱墅区", list.get(1).getAreaName());
+		assertTrue(list.get(3).noPca());
+	}
+
+	@Test
+	public void testCharSequence() {
+		String[] samples = { "浙江省杭州市拱墅区祥园路300号", "杭州拱墅区祥园路300号", "朝阳区汉庭酒店大山子店", "上海路990号",
+				"吉林龙潭区虹漕路461号58号楼5楼", "杭州市第十中学", "徐汇区虹漕路一路", "南山区大厦", "杭州市西湖区西溪镇", "", "  " };
+		CpcaExtractorImpl cachedExtractor = new CpcaExtractorImpl("adcodes.csv");
+		cachedExtractor.setPrefixCache(1000);
+		for (int round = 0; round < 2; round++) {
+			for (String location : samples) {
+				String expected = cpcaExtractor.encodeJson(cpcaExtractor.transform(location));
+				char[] chars = ("##" + location + "#").toCharArray();
+				assertEquals(expected, cpcaExtractor.encodeJson(cpcaExtractor.transform(chars, 2, location.length())));
+				assertEquals(expected, cpcaExtractor.encodeJson(cpcaExtractor.transform(new StringBuilder(location))));
+				assertEquals(expected,
+						cpcaExtractor.encodeJson(cachedExtractor.transform(CharBuffer.wrap(chars, 2, location.length()))));
+			}
+		}
+		// address 在第一次 getAddress 时才从 chars 生成
+		char[] chars = "浙江省杭州市拱墅区祥园路300号".toCharArray();
+		CpcaSeg cpcaSeg = cpcaExtractor.transform(chars, 0, chars.length);
+		assertEquals("拱墅区", cpcaSeg.getAreaName());
+		assertEquals("祥园路300号", cpcaSeg.getAddress());
+		chars[9] = '莫';
+		assertEquals("祥园路300号", cpcaSeg.getAddress());
+	}
+
+	@Test
+	public void testCompact() {
+		String[] samples = { "浙江省杭州市拱墅区祥园路300号", "杭州拱墅区祥园路300号", "朝阳区汉庭酒店大山子店", "上海路990号",
+				"吉林龙潭区虹漕路461号58号楼5楼", "万宁市万宁中学", "浙江省", "杭州市", "拱墅区", "", null };
+		Map<String, String> umap = new HashMap<>();
+		umap.put("朝阳区", "110105");
+		for (String location : samples) {
+			CpcaSeg cpcaSeg = cpcaExtractor.transform(location, umap);
+			CompactCpcaSeg compact = cpcaExtractor.transformCompact(location, umap, true);
+			assertEquals(location, cpcaExtractor.encodeJson(cpcaSeg), cpcaExtractor.encodeJson(compact));
+			assertEquals(location, cpcaExtractor.encodeJson(cpcaSeg), cpcaExtractor.encodeJson(compact.toCpcaSeg()));
+			assertEquals(cpcaSeg.getOutcome(), compact.getOutcome());
+			assertEquals(cpcaSeg.fullPca(), compact.fullPca());
+			assertEquals(cpcaSeg.hasCity(), compact.hasCity());
+			assertEquals(cpcaSeg.hasAddress(), compact.hasAddress());
+		}
+		CompactCpcaSeg compact = cpcaExtractor.transformCompact("朝阳区汉庭酒店大山子店", umap, true);
+		assertEquals(110105, compact.getCode());
+		assertEquals("北京市", compact.getCityName());
+		assertEquals(0, (int) compact.getAreaNameIndex().getBeginIndex());
+		assertEquals(3, (int) compact.getAreaNameIndex().getEndIndex());
+		assertEquals("汉庭酒店大山子店", compact.getAddress());
+		CompactCpcaSeg[] compacts = cpcaExtractor.transformAllCompact(samples, umap, true);
+		for (int i = 0; i < samples.length; i++) {
+			assertEquals(cpcaExtractor.encodeJson(cpcaExtractor.transform(samples[i], umap)),
+					cpcaExtractor.encodeJson(compacts[i]));
+		}
+	}
+
+	@Test
+	public void testColumns() {
+		String[] samples = { "浙江省杭州市拱墅区祥园路300号", "杭州拱墅区祥园路300号", "朝阳区汉庭酒店大山子店", "上海路990号",
+				"吉林龙潭区虹漕路461号58号楼5楼", "浙江省", "杭州中学", "", null };
+		CpcaColumns columns = new CpcaColumns(samples.length);
+		cpcaExtractor.transformColumns(samples, columns, null, true);
+		StringBuilder buffer = new StringBuilder();
+		int[] offsets = new int[samples.length + 1];
+		for (int i = 0; i < samples.length; i++) {
+			offsets[i] = buffer.length();
+			buffer.append(samples[i] == null ? "" : samples[i]);
+		}
+		offsets[samples.length] = buffer.length();
+		CpcaColumns charColumns = new CpcaColumns(samples.length);
+		cpcaExtractor.transformColumns(buffer.toString().toCharArray(), offsets, samples.length, charColumns, null,
+				true);
+		for (int i = 0; i < samples.length; i++) {
+			CpcaSeg cpcaSeg = cpcaExtractor.transform(samples[i]);
+			int adcode = cpcaSeg.getCpcaCode() == null ? 0 : Integer.parseInt(cpcaSeg.getCpcaCode());
+			assertEquals(adcode, columns.getAdcode()[i]);
+			assertEquals(cpcaSeg.getOutcome(), columns.outcome(i));
+			assertEquals(cpcaSeg.hasProvince() ? (int) cpcaSeg.getProvinceNameIndex().getEndIndex() : -1,
+					columns.getProvinceEnd()[i]);
+			assertEquals(cpcaSeg.hasCity() ? (int) cpcaSeg.getCityNameIndex().getEndIndex() : -1, columns.getCityEnd()[i]);
+			assertEquals(cpcaSeg.hasArea() ? (int) cpcaSeg.getAreaNameIndex().getEndIndex() : -1, columns.getAreaEnd()[i]);
+			assertEquals(adcode, charColumns.getAdcode()[i]);
+			assertEquals(columns.getOutcome()[i], charColumns.getOutcome()[i]);
+			assertEquals(columns.getAreaEnd()[i], charColumns.getAreaEnd()[i]);
+		}
+		assertEquals(330105, columns.getAdcode()[0]);
+		assertEquals(3, columns.getProvinceEnd()[0]);
+		assertEquals(9, columns.getAreaEnd()[0]);
+		assertEquals(CpcaOutcome.UNIT_REJECTED, columns.outcome(6));
+		// 复用结果对象不影响普通 transform 的结果
+		assertEquals("拱墅区", cpcaExtractor.transform(samples[0]).getAreaName());
+	}
+
+	@Test
+	public void testLocate() {
+		// 区县自身的经纬度
+		CpcaSeg cpcaSeg = cpcaExtractor.locate(120.141406, 30.319037);
+		assertEquals("浙江省", cpcaSeg.getProvinceName());
+		assertEquals("杭州市", cpcaSeg.getCityName());
+		assertEquals("拱墅区", cpcaSeg.getAreaName());
+		assertEquals("330105", cpcaSeg.getCpcaCode());
+		assertNull(cpcaSeg.getAddress());
+		assertEquals(CpcaOutcome.FULL, cpcaSeg.getOutcome());
+		assertEquals("上城区", cpcaExtractor.locate(120.17, 30.24).getAreaName());
+		assertEquals("朝阳区", cpcaExtractor.locate(116.45, 39.92).getAreaName());
+		// 没有下辖区县的市
+		cpcaSeg = cpcaExtractor.locate(113.75, 23.02);
+		assertEquals("东莞市", cpcaSeg.getCityName());
+		assertNull(cpcaSeg.getAreaName());
+		assertEquals("441900", cpcaSeg.getCpcaCode());
+		double[] longitudes = { 120.141406, 116.45, 113.75 };
+		double[] latitudes = { 30.319037, 39.92, 23.02 };
+		CpcaSeg[] cpcaSegs = cpcaExtractor.locateAll(longitudes, latitudes);
+		int[] adcodes = new int[3];
+		cpcaExtractor.locateCodes(longitudes, latitudes, adcodes);
+		for (int i = 0; i < adcodes.length; i++) {
+			assertEquals(cpcaSegs[i].getCpcaCode(), Integer.toString(adcodes[i]));
+		}
+		assertArrayEquals(new int[] { 330105, 110105, 441900 }, adcodes);
+		// 没有下辖市、区县的省
+		assertEquals("810000", cpcaExtractor.locate(114.171203, 22.277468).getCpcaCode());
+		assertEquals("820000", cpcaExtractor.locate(113.543028, 22.186835).getCpcaCode());
+		assertEquals("710000", cpcaExtractor.locate(121.509062, 25.044332).getCpcaCode());
+		try {
+			cpcaExtractor.locate(Double.NaN, 30);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test
+	public void testScan() throws Exception {
+		String text = "会议在浙江省 杭州市 西湖区召开，代表来自北京 上海，以及北京市朝阳区。杭州西湖中学位于上海路，朝阳区不明确。";
+		List<CpcaSpan> spans = cpcaExtractor.scan(text);
+		// 单位名称（杭州西湖中学、上海路）和重名的区县（朝阳区）不算
+		assertEquals(4, spans.size());
+		assertEquals("浙江省 杭州市 西湖区", spans.get(0).getText());
+		assertEquals("330106", spans.get(0).getCpcaCode());
+		assertEquals(3, spans.get(0).getBegin());
+		assertEquals("北京", spans.get(1).getText());
+		assertEquals("北京市", spans.get(1).getProvinceName());
+		assertEquals("上海", spans.get(2).getText());
+		assertEquals("310000", spans.get(2).getCpcaCode());
+		assertEquals("北京市朝阳区", spans.get(3).getText());
+		assertEquals("110105", spans.get(3).getCpcaCode());
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			sb.append(text);
+		}
+		String longText = sb.toString();
+		List<CpcaSpan> expected = cpcaExtractor.scan(longText);
+		assertEquals(400, expected.size());
+		// 块很小时跨块的地址结果不变
+		for (int chunk : new int[] { 1, 7, 100 }) {
+			List<CpcaSpan> actual = new ArrayList<>();
+			cpcaExtractor.scan(new StringReader(longText), null, true, actual::add, chunk);
+			assertEquals(expected.size(), actual.size());
+			for (int i = 0; i < actual.size(); i++) {
+				CpcaSpan span = actual.get(i);
+				assertEquals(expected.get(i).getBegin(), span.getBegin());
+				assertEquals(expected.get(i).getCpcaCode(), span.getCpcaCode());
+				assertEquals(longText.substring((int) span.getBegin(), (int) span.getEnd()), span.getText());
+			}
+		}
+	}
+
+	@Test
+	public void testUnitSuffixRules() {
+		UnitSuffixRules rules = UnitSuffixRules.defaults();
+		assertTrue(rules.isUnit("上海路990号", 2));
+		assertTrue(rules.isUnit("成都三街", 2));
+		assertTrue(rules.isUnit("南京东路", 2));
+		assertTrue(rules.isUnit("温州村", 2));
+		assertTrue(rules.isUnit("杭州第十中学", 2));
+		assertFalse(rules.isUnit("杭州第十一二三中学", 2));
+		assertFalse(rules.isUnit("杭州十", 2));
+		assertFalse(rules.isUnit("杭州", 2));
+		assertEquals(6, rules.reach());
+
+		CpcaExtractorImpl customExtractor = new CpcaExtractorImpl("adcodes.csv");
+		customExtractor.setPrefixCache(1000);
+		assertEquals("杭州市", customExtractor.transform("杭州银行").getCityName());
+		customExtractor.setUnitSuffixRules(UnitSuffixRules.builder().withDefaults().withSuffixes("银行").build());
+		assertTrue(customExtractor.transform("杭州银行").noPca());
+		assertEquals(CpcaOutcome.UNIT_REJECTED, customExtractor.transform("杭州银行").getOutcome());
+		// 没有任何规则时 上海路 中的 上海 当作上海市
+		customExtractor.setUnitSuffixRules(UnitSuffixRules.builder().build());
+		assertEquals("上海市", customExtractor.transform("上海路990号").getProvinceName());
+		assertEquals("上海市", cpcaExtractor.transform("上海市上海路990号").getProvinceName());
+		assertTrue(cpcaExtractor.transform("上海路990号").noPca());
+	}
+
+	@Test
+	public void testTownDictionary() throws Exception {
+		String csv = "adcode,name,longitude,latitude\n" + "330000000000,浙江省,120.1,30.2\n"
+				+ "330106000000,西湖区,120.1,30.2\n" + "330106109000,三墩镇,120.1,30.2\n"
+				+ "330106109201,绕城村村委会,120.1,30.2\n" + "330106109202,新村村委会,120.1,30.2\n"
+				+ "330106005000,文新街道,120.1,30.2\n" + "330106005003,德加社区居民委员会,120.1,30.2\n"
+				+ "330105005000,拱宸桥街道,120.1,30.2\n" + "330105005201,新村村委会,120.1,30.2\n"
+				+ "330106199201,孤儿村村委会,120.1,30.2\n";
+		CpcaTownDictionary towns = CpcaTownDictionary
+				.load(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+		// 省、区县和没有所属乡镇的村不加载
+		assertEquals(7, towns.size());
+		CpcaExtractorImpl townExtractor = new CpcaExtractorImpl("adcodes.csv");
+		townExtractor.setPrefixCache(1000);
+		townExtractor.setTownDictionary(towns);
+		CpcaSeg cpcaSeg = townExtractor.transform("浙江省杭州市西湖区三墩镇绕城村88号");
+		assertEquals("西湖区", cpcaSeg.getAreaName());
+		assertEquals("三墩镇绕城村88号", cpcaSeg.getAddress());
+		assertEquals("三墩镇", cpcaSeg.getTownName());
+		assertEquals("330106109000", cpcaSeg.getTownCode());
+		assertEquals(Integer.valueOf(9), cpcaSeg.getTownNameIndex().getBeginIndex());
+		assertEquals(Integer.valueOf(12), cpcaSeg.getTownNameIndex().getEndIndex());
+		assertEquals("绕城村村委会", cpcaSeg.getVillageName());
+		assertEquals("330106109201", cpcaSeg.getVillageCode());
+		assertEquals(Integer.valueOf(12), cpcaSeg.getVillageNameIndex().getBeginIndex());
+		assertEquals(Integer.valueOf(15), cpcaSeg.getVillageNameIndex().getEndIndex());
+		// 前缀缓存命中时乡镇按各自的地址匹配
+		cpcaSeg = townExtractor.transform("浙江省杭州市西湖区文新街道德加社区");
+		assertEquals("文新街道", cpcaSeg.getTownName());
+		assertEquals("德加社区居民委员会", cpcaSeg.getVillageName());
+		assertEquals(Integer.valueOf(17), cpcaSeg.getVillageNameIndex().getEndIndex());
+		assertTrue(townExtractor.prefixCacheStats().hitCount() > 0);
+		// 乡镇只在所属区县下查找，村只在所属乡镇下查找
+		assertNull(townExtractor.transform("浙江省杭州市拱墅区三墩镇").getTownName());
+		cpcaSeg = townExtractor.transform("杭州市拱墅区拱宸桥街道新村5号");
+		assertEquals("330105005201", cpcaSeg.getVillageCode());
+		cpcaSeg = townExtractor.transform("浙江省杭州市西湖区新村5号");
+		assertNull(cpcaSeg.getTownName());
+		assertNull(cpcaSeg.getVillageName());
+		// JSON 中没有乡镇、村时不输出，和 Spring MVC 默认的 ObjectMapper 一致
+		ObjectMapper objectMapper = new ObjectMapper();
+		CpcaJsonEncoder encoder = townExtractor.jsonEncoder(true);
+		for (String location : new String[] { "浙江省杭州市西湖区三墩镇绕城村88号", "浙江省杭州市西湖区三墩镇", "杭州市西湖区" }) {
+			cpcaSeg = townExtractor.transform(location);
+			assertEquals(objectMapper.writeValueAsString(cpcaSeg),
+					new String(encoder.encode(cpcaSeg), StandardCharsets.UTF_8));
+			// 紧凑结果同样保留乡镇、村
+			CompactCpcaSeg compact = townExtractor.transformCompact(location, null, true);
+			assertEquals(objectMapper.writeValueAsString(cpcaSeg), objectMapper.writeValueAsString(compact));
+			assertEquals(objectMapper.writeValueAsString(cpcaSeg), objectMapper.writeValueAsString(compact.toCpcaSeg()));
+		}
+		CompactCpcaSeg compact = townExtractor.transformCompact("浙江省杭州市西湖区三墩镇绕城村88号", null, true);
+		assertEquals("三墩镇", compact.getTownName());
+		assertEquals("330106109000", compact.getTownCode());
+		assertEquals("绕城村村委会", compact.getVillageName());
+		assertEquals("330106109201", compact.getVillageCode());
+		assertEquals(Integer.valueOf(12), compact.getVillageNameIndex().getBeginIndex());
+		assertEquals("330106109201", compact.toCpcaSeg().getVillageCode());
+		assertNull(townExtractor.transformCompact("杭州市西湖区", null, true).getTownName());
+		assertFalse(objectMapper.writeValueAsString(cpcaExtractor.transform("浙江省杭州市西湖区三墩镇")).contains("town"));
+		assertNull(cpcaExtractor.transform("浙江省杭州市西湖区三墩镇绕城村88号").getTownName());
+	}
+
+	@Test
+	public void testFuzzyMatch() throws Exception {
+		// 默认不开启
+		assertEquals(CpcaOutcome.AMBIGUOUS, cpcaExtractor.transform("杭洲市西湖区文三路").getOutcome());
+		CpcaExtractorImpl fuzzyExtractor = new CpcaExtractorImpl("adcodes.csv");
+		fuzzyExtractor.setResultCache(1000);
+		fuzzyExtractor.setFuzzyMatch(true);
+		// 替换：杭洲市 和 杭州市、株洲市 都相差一个字，按后面的 西湖区 取 杭州市
+		CpcaSeg cpcaSeg = fuzzyExtractor.transform("杭洲市西湖区文三路");
+		assertEquals("330106", cpcaSeg.getCpcaCode());
+		assertEquals("杭洲市", cpcaSeg.getMisspelledName());
+		assertEquals("杭州市", cpcaSeg.getCorrectedName());
+		assertEquals("文三路", cpcaSeg.getAddress());
+		// 删除：位置按原地址
+		cpcaSeg = fuzzyExtractor.transform("黑龙省中央大街");
+		assertEquals("230000", cpcaSeg.getCpcaCode());
+		assertEquals("黑龙省", cpcaSeg.getMisspelledName());
+		assertEquals("黑龙江省", cpcaSeg.getCorrectedName());
+		assertEquals(Integer.valueOf(3), cpcaSeg.getProvinceNameIndex().getEndIndex());
+		assertEquals("中央大街", cpcaSeg.getAddress());
+		// 精确匹配到的不改正；不同处是单位后缀的不改正
+		assertNull(fuzzyExtractor.transform("浙江省杭州市拱墅区祥园路300号").getCorrectedName());
+		cpcaSeg = fuzzyExtractor.transform("中山路123号");
+		assertNull(cpcaSeg.getCpcaCode());
+		assertNull(cpcaSeg.getCorrectedName());
+		// 朝杨区 和 朝阳区、朝天区 都相差一个字，朝阳区 有多个无法确定，不改正为 朝天区
+		cpcaSeg = fuzzyExtractor.transform("朝杨区大山子");
+		assertNull(cpcaSeg.getCpcaCode());
+		assertNull(cpcaSeg.getCorrectedName());
+		ObjectMapper objectMapper = new ObjectMapper();
+		CpcaJsonEncoder encoder = fuzzyExtractor.jsonEncoder(true);
+		for (String location : new String[] { "杭洲市西湖区文三路", "杭州市西湖区文三路" }) {
+			cpcaSeg = fuzzyExtractor.transform(location);
+			assertEquals(objectMapper.writeValueAsString(cpcaSeg),
+					new String(encoder.encode(cpcaSeg), StandardCharsets.UTF_8));
+		}
+		// 复用结果对象时，改正不成功（南城区 和 东城区、西城区 等都相差一个字）的结果不受尝试过的改正影响
+		CpcaColumns columns = new CpcaColumns(2);
+		fuzzyExtractor.transformColumns(new String[] { "杭洲市西湖区文三路", "南城区" }, columns, null, true);
+		assertEquals(330106, columns.getAdcode()[0]);
+		assertEquals(0, columns.getAdcode()[1]);
+		assertEquals(fuzzyExtractor.transform("南城区").getOutcome(), columns.outcome(1));
+	}
+
+	@Test
+	public void testNormalizer() throws Exception {
+		CpcaNormalizer normalizer = CpcaNormalizer.defaults();
+		assertEquals("广东省深圳市南山区科技园12号", normalizer.normalize("廣東省 深圳市，南山區　科技园１２号"));
+		// 不需要改动的地址返回原对象
+		String clean = "浙江省杭州市拱墅区祥园路300号";
+		assertSame(clean, normalizer.normalize(clean));
+		assertEquals("台湾a1", CpcaNormalizer.builder().withFullWidth().withMapping("臺灣", "台湾").withDropped(" ")
+				.build().normalize("臺灣 ａ１"));
+		CpcaExtractorImpl normalizedExtractor = new CpcaExtractorImpl("adcodes.csv");
+		normalizedExtractor.setResultCache(1000);
+		normalizedExtractor.setNormalizer(normalizer);
+		// 位置和 address 按原地址
+		String location = "廣東省 深圳市，南山區　科技园１２号";
+		for (int i = 0; i < 2; i++) {
+			CpcaSeg cpcaSeg = normalizedExtractor.transform(location);
+			assertEquals("440305", cpcaSeg.getCpcaCode());
+			assertEquals(Integer.valueOf(0), cpcaSeg.getProvinceNameIndex().getBeginIndex());
+			assertEquals(Integer.valueOf(4), cpcaSeg.getCityNameIndex().getBeginIndex());
+			assertEquals(Integer.valueOf(7), cpcaSeg.getCityNameIndex().getEndIndex());
+			assertEquals(Integer.valueOf(8), cpcaSeg.getAreaNameIndex().getBeginIndex());
+			assertEquals(Integer.valueOf(11), cpcaSeg.getAreaNameIndex().getEndIndex());
+			assertEquals("科技园１２号", cpcaSeg.getAddress());
+		}
+		assertEquals(normalizedExtractor.encodeJson(normalizedExtractor.transform(clean)),
+				cpcaExtractor.encodeJson(cpcaExtractor.transform(clean)));
+		CpcaColumns columns = new CpcaColumns(2);
+		normalizedExtractor.transformColumns(new String[] { location, "臺灣省臺北市" }, columns, null, true);
+		assertEquals(440305, columns.getAdcode()[0]);
+		assertEquals(normalizedExtractor.transform("臺灣省臺北市").getCpcaCode(), cpcaExtractor.transform("台湾省台北市").getCpcaCode());
+	}
+
+	@Test
+	public void testHistory() throws Exception {
+		// 2014 年版：富阳区 为 富阳市，另有一个之后撤销的 测试县；2017 年版：临安市 改为 临安区
+		List<String> lines = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(getClass().getResourceAsStream("/adcodes.csv"), StandardCharsets.UTF_8))) {
+			reader.lines().forEach(lines::add);
+		}
+		List<String> lines2014 = new ArrayList<>();
+		List<String> lines2017 = new ArrayList<>();
+		for (String line : lines) {
+			lines2014.add(line.replace("330111000000,富阳区,", "330183000000,富阳市,"));
+			lines2017.add(line.replace("330185000000,临安市,", "330112000000,临安区,"));
+		}
+		lines2014.add("330199000000,测试县,120.1,30.2");
+		Path csv2014 = Files.createTempFile("adcodes2014", ".csv");
+		Path csv2017 = Files.createTempFile("adcodes2017", ".csv");
+		try {
+			Files.write(csv2014, lines2014, StandardCharsets.UTF_8);
+			Files.write(csv2017, lines2017, StandardCharsets.UTF_8);
+			CpcaExtractor historyExtractor = CpcaExtractors.builder().withCpcaCvsFile(csv2017.toString())
+					.withHistory(LocalDate.of(2014, 1, 1), csv2014.toString())
+					.withHistory(LocalDate.of(2017, 1, 1), csv2017.toString()).build();
+			LocalDate asOf2015 = LocalDate.of(2015, 6, 1);
+			CpcaSeg cpcaSeg = historyExtractor.transformAsOf("浙江省杭州市富阳市银湖街道", asOf2015);
+			assertEquals("330183", cpcaSeg.getCpcaCode());
+			assertEquals("银湖街道", cpcaSeg.getAddress());
+			assertEquals(0, cpcaSeg.getDictVersion());
+			// 早于所有版本时用最早的版本
+			assertEquals("330183", historyExtractor.transformAsOf("杭州市富阳市", LocalDate.of(2000, 1, 1)).getCpcaCode());
+			assertEquals("330185", historyExtractor.transformAsOf("杭州市临安市", asOf2015).getCpcaCode());
+			assertEquals("330112", historyExtractor.transformAsOf("杭州市临安区", LocalDate.of(2017, 1, 1)).getCpcaCode());
+			assertNotEquals("330183", historyExtractor.transform("杭州市富阳市").getCpcaCode());
+			// 旧编码转换为当前编码
+			assertEquals("330111", historyExtractor.currentCode("330183", asOf2015));
+			assertEquals("330112", historyExtractor.currentCode("330185", asOf2015));
+			assertEquals("330106", historyExtractor.currentCode("330106", asOf2015));
+			assertEquals("330100", historyExtractor.currentCode("330199", asOf2015));
+			assertNull(historyExtractor.currentCode("330183", LocalDate.of(2018, 1, 1)));
+			Map<String, String> codes = historyExtractor.currentCodes(asOf2015);
+			assertEquals("330111", codes.get("330183"));
+			assertEquals("330106", codes.get("330106"));
+			// 各版本共用自动机，未变化的匹配名共用同一个 MatchAddressInfo
+			CpcaHistory history = ((CpcaExtractorImpl) historyExtractor).history;
+			CpcaTrie<CpcaExtractorImpl.MatchAddressInfo> trie2014 = history.dictionaries[0].acdat;
+			CpcaTrie<CpcaExtractorImpl.MatchAddressInfo> trie2017 = history.dictionaries[1].acdat;
+			assertSame(trie2014.get(trie2014.exactMatchSearch("西湖区")), trie2017.get(trie2017.exactMatchSearch("西湖区")));
+			assertEquals(trie2014.exactMatchSearch("富阳市"), trie2017.exactMatchSearch("富阳市"));
+			assertNull(trie2017.get(trie2017.exactMatchSearch("富阳市")));
+			// 没有历史字典时同 transform(location)
+			assertEquals(cpcaExtractor.encodeJson(cpcaExtractor.transform("浙江省杭州市富阳区")),
+					cpcaExtractor.encodeJson(cpcaExtractor.transformAsOf("浙江省杭州市富阳区", asOf2015)));
+			assertEquals("330106", cpcaExtractor.currentCode("330106", asOf2015));
+		} finally {
+			Files.deleteIfExists(csv2014);
+			Files.deleteIfExists(csv2017);
+		}
+	}
+
+	@Test
+	public void testExecution() throws Exception {
+		String[] samples = { "浙江省杭州市拱墅区祥园路300号", "朝阳区汉庭酒店大山子店", "上海路990号", "吉林龙潭区虹漕路461号58号楼5楼", null };
+		String[] locations = new String[5000];
+		for (int i = 0; i < locations.length; i++) {
+			locations[i] = samples[i % samples.length];
+		}
+		CpcaExecution bounded = CpcaExecution.boundedPool(2);
+		for (CpcaExecution execution : new CpcaExecution[] { bounded, CpcaExecution.virtualThreads() }) {
+			cpcaExtractor.setExecution(execution);
+			CpcaSeg[] cpcaSegs = cpcaExtractor.transformAll(locations);
+			for (int i = 0; i < locations.length; i++) {
+				assertEquals(cpcaExtractor.encodeJson(cpcaExtractor.transform(locations[i])),
+						cpcaExtractor.encodeJson(cpcaSegs[i]));
+			}
+			assertEquals("330105", cpcaExtractor.transformAsync(samples[0]).get(10, TimeUnit.SECONDS).getCpcaCode());
+		}
+		// 在执行方式自己的线程里调用 transformAll，线程全部占满时也不会死锁
+		cpcaExtractor.setExecution(bounded);
+		List<CompletableFuture<CpcaSeg[]>> futures = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			futures.add(CompletableFuture.supplyAsync(() -> cpcaExtractor.transformAll(locations),
+					bounded.executor()));
+		}
+		for (CompletableFuture<CpcaSeg[]> future : futures) {
+			assertEquals("330105", future.get(30, TimeUnit.SECONDS)[0].getCpcaCode());
+		}
+	}
+
+	@Test
+	public void testMetrics() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		CpcaMetrics metrics = new CpcaMetrics(1);
+		metrics.bindTo(registry);
+		cpcaExtractor.setMetrics(metrics);
+		String[] locations = { "浙江省杭州市拱墅区祥园路300号", "杭州市", "浙江省", "汉庭酒店", "上海路990号", "朝阳区汉庭酒店大山子店" };
+		CpcaOutcome[] outcomes = { CpcaOutcome.FULL, CpcaOutcome.CITY_ONLY, CpcaOutcome.PROVINCE_ONLY,
+				CpcaOutcome.NO_MATCH, CpcaOutcome.UNIT_REJECTED, CpcaOutcome.AMBIGUOUS };
+		for (int i = 0; i < locations.length; i++) {
+			assertEquals(locations[i], outcomes[i], cpcaExtractor.transform(locations[i]).getOutcome());
+		}
+		cpcaExtractor.transformAll(locations);
+		for (CpcaOutcome outcome : outcomes) {
+			assertEquals(2, metrics.count(outcome));
+			assertEquals(2, registry.get("cpca.transform.outcomes").tag("outcome", outcome.name().toLowerCase())
+					.functionCounter().count(), 0);
+		}
+		assertEquals(12, registry.get("cpca.transform.input.length").tag("le", "+Inf").functionCounter().count(), 0);
+		assertEquals(8, registry.get("cpca.transform.input.length").tag("le", "8").functionCounter().count(), 0);
+		assertEquals(2, registry.get("cpca.transform.hits").tag("le", "0").functionCounter().count(), 0);
+		assertEquals(12, registry.get("cpca.transform.latency").functionTimer().count(), 0);
+		assertTrue(metrics.latencyPercentile(0.5) > 0);
+		assertTrue(metrics.latencyPercentile(0.999) >= metrics.latencyPercentile(0.5));
+		// 只读结果同样带有分类
+		assertEquals(CpcaOutcome.FULL, CpcaSeg.unmodifiable(cpcaExtractor.transform(locations[0])).getOutcome());
+		// 模糊匹配的各次尝试、scan 都不计入，每次 transform 只记录所采用的匹配的匹配数
+		CpcaExtractorImpl fuzzyExtractor = new CpcaExtractorImpl("adcodes.csv");
+		fuzzyExtractor.setFuzzyMatch(true);
+		SimpleMeterRegistry fuzzyRegistry = new SimpleMeterRegistry();
+		CpcaMetrics fuzzyMetrics = new CpcaMetrics(1);
+		fuzzyMetrics.bindTo(fuzzyRegistry);
+		fuzzyExtractor.setMetrics(fuzzyMetrics);
+		assertEquals("杭州市", fuzzyExtractor.transform("杭洲市西湖区文三路").getCorrectedName());
+		CpcaColumns columns = new CpcaColumns(1);
+		fuzzyExtractor.transformColumns(new String[] { "杭洲市西湖区文三路" }, columns, null, true);
+		assertEquals(2, fuzzyExtractor.scan("我住在浙江省杭州市西湖区，他在北京市朝阳区").size());
+		assertEquals(2, fuzzyRegistry.get("cpca.transform.latency").functionTimer().count(), 0);
+		assertEquals(2, fuzzyRegistry.get("cpca.transform.hits").tag("le", "+Inf").functionCounter().count(), 0);
+		SimpleMeterRegistry exactRegistry = new SimpleMeterRegistry();
+		CpcaMetrics exactMetrics = new CpcaMetrics(1);
+		exactMetrics.bindTo(exactRegistry);
+		CpcaExtractorImpl exactExtractor = new CpcaExtractorImpl("adcodes.csv");
+		exactExtractor.setMetrics(exactMetrics);
+		exactExtractor.transformAll(new String[] { "杭州市西湖区文三路", "杭州市西湖区文三路" });
+		for (int bound : CpcaMetrics.HIT_BUCKETS) {
+			String le = Integer.toString(bound);
+			assertEquals(le, exactRegistry.get("cpca.transform.hits").tag("le", le).functionCounter().count(),
+					fuzzyRegistry.get("cpca.transform.hits").tag("le", le).functionCounter().count(), 0);
+		}
+	}
+
+	@Test
+	public void testLatencyHistogram() {
+		for (long v : new long[] { 0, 1, 7, 8, 15, 16, 17, 1000, 123456789L, Long.MAX_VALUE }) {
+			int index = CpcaMetrics.LatencyHistogram.index(v);
+			assertTrue(v <= CpcaMetrics.LatencyHistogram.upperBound(index));
+			assertTrue(index == 0 || v > CpcaMetrics.LatencyHistogram.upperBound(index - 1));
+		}
+	}
+
+	@Test
+	public void testResultCache() {
+		CpcaExtractorImpl cachedExtractor = new CpcaExtractorImpl("adcodes.csv");
+		cachedExtractor.setResultCache(100);
+		String location = "浙江省杭州市拱墅区祥园路300号";
+		CpcaSeg first = cachedExtractor.transform(location);
+		CpcaSeg second = cachedExtractor.transform(location);
+		assertSame(first, second);
+		assertEquals(cpcaExtractor.encodeJson(cpcaExtractor.transform(location)), cpcaExtractor.encodeJson(first));
+		// umap 按引用区分
+		Map<String, String> umap = new HashMap<>();
+		umap.put("朝阳区", "110105");
+		assertEquals("北京市", cachedExtractor.transform("朝阳区汉庭酒店大山子店", umap).getProvinceName());
+		assertEquals("北京市", cachedExtractor.transform("朝阳区汉庭酒店大山子店", umap).getProvinceName());
+		assertNotSame(cachedExtractor.transform("朝阳区汉庭酒店大山子店", umap),
+				cachedExtractor.transform("朝阳区汉庭酒店大山子店", new HashMap<>(umap)));
+		assertEquals(3, cachedExtractor.cacheStats().hitCount());
+		assertEquals(3, cachedExtractor.cacheStats().missCount());
+		try {
+			first.setAddress("x");
+			fail();
+		} catch (UnsupportedOperationException e) {
+		}
+		CpcaSeg copy = first.copy();
+		copy.reset();
+		assertNull(copy.getProvinceName());
+		assertEquals("浙江省", first.getProvinceName());
+		for (int i = 0; i < 1000; i++) {
+			cachedExtractor.transform("上海路" + i + "号");
+		}
+		cachedExtractor.resultCache.cleanUp();
+		assertTrue(cachedExtractor.cacheStats().evictionCount() > 0);
+	}
+
+	@Test
+	public void testPrefixCache() {
+		CpcaExtractorImpl cachedExtractor = new CpcaExtractorImpl("adcodes.csv");
+		cachedExtractor.setPrefixCache(1000);
+		CpcaSeg first = cachedExtractor.transform("浙江省杭州市拱墅区祥园路300号");
+		CpcaSeg second = cachedExtractor.transform("浙江省杭州市拱墅区莫干山路1号");
+		assertEquals(1, cachedExtractor.prefixCacheStats().hitCount());
+		assertEquals("拱墅区", second.getAreaName());
+		assertEquals("330105", second.getCpcaCode());
+		assertEquals("莫干山路1号", second.getAddress());
+		assertEquals("祥园路300号", first.getAddress());
+		// 开头相同，结果和不用缓存时一致
+		String[] heads = { "浙江省杭州市拱墅区", "杭州拱墅区", "杭州", "杭州市", "朝阳区", "吉林", "吉林市", "上海市徐汇区", "北京", "南山区",
+				"广东省深圳市" };
+		String[] tails = { "", "祥园路300号", "区", "市第十中学", "杭州市", "拱墅区", "汉庭酒店大山子店", "镇", "大厦", "  ", "朝阳区" };
+		Map<String, String> umap = new HashMap<>();
+		umap.put("朝阳区", "110105");
+		for (int round = 0; round < 2; round++) {
+			for (String head : heads) {
+				for (String tail : tails) {
+					String location = head + tail;
+					assertEquals(location, cpcaExtractor.encodeJson(cpcaExtractor.transform(location)),
+							cpcaExtractor.encodeJson(cachedExtractor.transform(location)));
+					assertEquals(location, cpcaExtractor.encodeJson(cpcaExtractor.transform(location, false)),
+							cpcaExtractor.encodeJson(cachedExtractor.transform(location, false)));
+					assertEquals(location, cpcaExtractor.encodeJson(cpcaExtractor.transform(location, umap)),
+							cpcaExtractor.encodeJson(cachedExtractor.transform(location, umap)));
+				}
+			}
+		}
+		assertTrue(cachedExtractor.prefixCacheStats().hitCount() > heads.length * tails.length);
+	}
+
+	@Test
+	public void testReload() throws Exception {
+		Path csv = Files.createTempFile("adcodes", ".csv");
+		try (InputStream in = getClass().getResourceAsStream("/adcodes.csv")) {
+			Files.copy(in, csv, StandardCopyOption.REPLACE_EXISTING);
+		}
+		Files.write(csv, "330199000000,测试新区,120.1,30.2\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+		CpcaExtractorImpl reloadable = new CpcaExtractorImpl("adcodes.csv");
+		reloadable.setResultCache(100);
+		reloadable.setPrefixCache(100);
+		String location = "浙江省杭州市测试新区祥园路300号";
+		String unchanged = "浙江省杭州市拱墅区祥园路300号";
+		assertEquals(1, reloadable.dictionaryVersion());
+		assertFalse(reloadable.transform(location).hasArea());
+		String expected = reloadable.encodeJson(reloadable.transform(unchanged));
+		// reload 期间其他线程持续调用 transform
+		AtomicBoolean running = new AtomicBoolean(true);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Future<Integer>> futures = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			futures.add(executor.submit(() -> {
+				int maxVersion = 0;
+				while (running.get()) {
+					CpcaSeg cpcaSeg = reloadable.transform(unchanged);
+					assertEquals(expected, reloadable.encodeJson(cpcaSeg));
+					assertTrue(cpcaSeg.getDictVersion() >= maxVersion);
+					maxVersion = cpcaSeg.getDictVersion();
+				}
+				return maxVersion;
+			}));
+		}
+		try {
+			assertEquals(Integer.valueOf(2), reloadable.reload(csv.toString()).get(60, TimeUnit.SECONDS));
+			Thread.sleep(100);
+		} finally {
+			running.set(false);
+			executor.shutdown();
+			Files.deleteIfExists(csv);
+		}
+		for (Future<Integer> future : futures) {
+			assertEquals(Integer.valueOf(2), future.get());
+		}
+		assertEquals(2, reloadable.dictionaryVersion());
+		CpcaSeg cpcaSeg = reloadable.transform(location);
+		assertEquals("测试新区", cpcaSeg.getAreaName());
+		assertEquals("330199", cpcaSeg.getCpcaCode());
+		assertEquals(2, cpcaSeg.getDictVersion());
+		// 加载失败时继续使用原字典
+		try {
+			reloadable.reload("not-exists.csv").get(60, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+		}
+		assertEquals(2, reloadable.dictionaryVersion());
+		assertEquals("测试新区", reloadable.transform(location).getAreaName());
+	}
 }
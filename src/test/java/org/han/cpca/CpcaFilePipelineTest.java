@@ -0,0 +1,54 @@
+package org.han.cpca;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CpcaFilePipelineTest {
+	CpcaExtractor cpcaExtractor = null;
+
+	@Before
+	public void setUp() throws Exception {
+		cpcaExtractor = new CpcaExtractorImpl("adcodes.csv");
+	}
+
+	@Test
+	public void testEnrich() throws Exception {
+		List<String> lines = new ArrayList<>();
+		lines.add("id,address,remark");
+		for (int i = 0; i < 500; i++) {
+			lines.add(i + ",浙江省杭州市拱墅区祥园路" + i + "号,a");
+			lines.add(i + ",\"上海市徐汇区虹漕路461号,58号楼\",\"b,\"\"c\"\"\"");
+			lines.add(i + ",上海路990号");
+		}
+		Path input = Files.createTempFile("cpca", ".csv");
+		Path output = Files.createTempFile("cpca", ".out.csv");
+		try {
+			Files.write(input, lines, StandardCharsets.UTF_8);
+			CpcaFilePipeline pipeline = new CpcaFilePipeline(cpcaExtractor, ',', 1, true);
+			// 块切得很小，验证跨块时的行切分和输出顺序
+			pipeline.setChunkSize(256);
+			pipeline.setThreads(4);
+			assertEquals(lines.size(), pipeline.enrich(input, output));
+			List<String> results = Files.readAllLines(output, StandardCharsets.UTF_8);
+			assertEquals(lines.size(), results.size());
+			assertEquals("id,address,remark,province,city,area,adcode,address", results.get(0));
+			for (int i = 0; i < 500; i++) {
+				assertEquals(lines.get(i * 3 + 1) + ",浙江省,杭州市,拱墅区,330105,祥园路" + i + "号", results.get(i * 3 + 1));
+				assertEquals(lines.get(i * 3 + 2) + ",上海市,上海市,徐汇区,310104,\"虹漕路461号,58号楼\"",
+						results.get(i * 3 + 2));
+				assertEquals(lines.get(i * 3 + 3) + ",,,,,上海路990号", results.get(i * 3 + 3));
+			}
+		} finally {
+			Files.deleteIfExists(input);
+			Files.deleteIfExists(output);
+		}
+	}
+}
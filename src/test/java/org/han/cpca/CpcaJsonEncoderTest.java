@@ -0,0 +1,77 @@
+package org.han.cpca;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class CpcaJsonEncoderTest {
+	CpcaExtractorImpl cpcaExtractor = null;
+	String[] samples = { "浙江省杭州市拱墅区祥园路300号", "杭州拱墅区祥园路300号", "朝阳区汉庭酒店大山子店", "上海路990号",
+			"吉林龙潭区虹漕路461号58号楼5楼", "杭州市第十中学", "上海市徐汇区\"虹漕路\"\\461号\t58号楼\n5楼", "浙江省\u0001\u001f\u007f/路",
+			"北京市朝阳区\ud83d\ude00大厦", "北京市朝阳区\ud83d路\ude00", "拱墅区", "浙江省", "", null };
+
+	@Before
+	public void setUp() throws Exception {
+		cpcaExtractor = new CpcaExtractorImpl("adcodes.csv");
+	}
+
+	@Test
+	public void testEncode() throws Exception {
+		CpcaJsonEncoder encoder = cpcaExtractor.jsonEncoder(false);
+		CpcaJsonEncoder plainEncoder = new CpcaJsonEncoder(false);
+		for (String sample : samples) {
+			CpcaSeg cpcaSeg = cpcaExtractor.transform(sample);
+			byte[] expected = cpcaExtractor.encodeJson(cpcaSeg).getBytes(StandardCharsets.UTF_8);
+			assertArrayEquals(sample, expected, encoder.encode(cpcaSeg));
+			assertArrayEquals(sample, expected, plainEncoder.encode(cpcaSeg));
+			ByteBuffer buffer = ByteBuffer.allocate(expected.length + 3);
+			buffer.put((byte) 'x');
+			encoder.encode(cpcaSeg, buffer);
+			assertEquals(expected.length + 1, buffer.position());
+			assertArrayEquals(expected, Arrays.copyOfRange(buffer.array(), 1, buffer.position()));
+		}
+		// 所有需要转义的字符
+		StringBuilder sb = new StringBuilder();
+		for (char ch = 0; ch < 0xa0; ch++) {
+			sb.append(ch);
+		}
+		CpcaSeg cpcaSeg = new CpcaSeg();
+		cpcaSeg.setAddress(sb.toString());
+		cpcaSeg.setAreaNameIndex(new CpcaIndex(-1, Integer.MIN_VALUE));
+		assertArrayEquals(cpcaExtractor.encodeJson(cpcaSeg).getBytes(StandardCharsets.UTF_8), encoder.encode(cpcaSeg));
+	}
+
+	@Test
+	public void testEncodeAll() throws Exception {
+		// 和 Spring MVC 默认的 ObjectMapper 一致，null 字段同样输出
+		ObjectMapper objectMapper = new ObjectMapper();
+		CpcaJsonEncoder encoder = cpcaExtractor.jsonEncoder(true);
+		// 不成对的代理字符 Jackson 原样输出，不参与比较（见 testEncode）
+		String[] valid = Arrays.stream(samples).filter(s -> s == null || !s.contains("\ud83d路"))
+				.toArray(String[]::new);
+		String[] locations = new String[2000];
+		for (int i = 0; i < locations.length; i++) {
+			locations[i] = valid[i % valid.length];
+		}
+		CpcaSeg[] cpcaSegs = cpcaExtractor.transformAll(locations);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		encoder.encodeAll(cpcaSegs, out);
+		assertEquals(objectMapper.writeValueAsString(cpcaSegs), new String(out.toByteArray(), StandardCharsets.UTF_8));
+		out.reset();
+		encoder.encodeLines(cpcaSegs, out);
+		String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+		assertEquals(cpcaSegs.length, lines.length);
+		for (int i = 0; i < cpcaSegs.length; i++) {
+			assertEquals(objectMapper.writeValueAsString(cpcaSegs[i]), lines[i]);
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package org.han.cpca;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CpcaSnapshotTest {
+	private static final String[] SAMPLES = { "浙江省杭州市拱墅区祥园路300号", "杭州拱墅区祥园路300号", "朝阳区汉庭酒店大山子店", "上海路990号",
+			"吉林龙潭区虹漕路461号58号楼5楼", "杭州市第十中学", "内蒙古鄂尔多斯市伊金霍洛旗", "" };
+	CpcaExtractorImpl cpcaExtractor = null;
+	Path snapshot = null;
+
+	@Before
+	public void setUp() throws Exception {
+		cpcaExtractor = new CpcaExtractorImpl("adcodes.csv");
+		snapshot = Files.createTempFile("adcodes", ".cpca");
+		CpcaSnapshot.write("adcodes.csv", snapshot);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Files.deleteIfExists(snapshot);
+	}
+
+	@Test
+	public void testLoad() {
+		assertSameResults(CpcaExtractors.builder().withSnapshotFile(snapshot.toString()).build());
+		// 构建时生成的 adcodes.cpca
+		assertSameResults(CpcaExtractors.builder().withSnapshotFile("adcodes.cpca").build());
+	}
+
+	@Test
+	public void testFallback() throws Exception {
+		byte[] bytes = Files.readAllBytes(snapshot);
+		bytes[bytes.length / 2] ^= 1;
+		Files.write(snapshot, bytes);
+		assertSameResults(
+				CpcaExtractors.builder().withSnapshotFile(snapshot.toString()).withCpcaCvsFile("adcodes.csv").build());
+		try {
+			CpcaExtractors.builder().withSnapshotFile(snapshot.toString()).build();
+			fail();
+		} catch (RuntimeException e) {
+		}
+		// 版本不一致
+		bytes[bytes.length / 2] ^= 1;
+		bytes[7] = (byte) (CpcaSnapshot.VERSION + 1);
+		Files.write(snapshot, bytes);
+		assertSameResults(
+				CpcaExtractors.builder().withSnapshotFile(snapshot.toString()).withCpcaCvsFile("adcodes.csv").build());
+	}
+
+	private void assertSameResults(CpcaExtractor loaded) {
+		for (String sample : SAMPLES) {
+			assertEquals(cpcaExtractor.encodeJson(cpcaExtractor.transform(sample)),
+					cpcaExtractor.encodeJson(loaded.transform(sample)));
+			assertEquals(cpcaExtractor.encodeJson(cpcaExtractor.transform(sample, false)),
+					cpcaExtractor.encodeJson(loaded.transform(sample, false)));
+		}
+		// 快照中保存了经纬度
+		assertEquals("330105", loaded.locate(120.141406, 30.319037).getCpcaCode());
+	}
+}